@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Temp files for saves that write next to the target and rename over it,
+// shared by DrawingApplication and TextEditor
+final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    // Creates a new, uniquely named file beside the target, so no existing file is
+    // overwritten. It gets the default permissions for new files (the umask
+    // applies), or the target's when the target exists, so the rename keeps them.
+    static Path tempSibling(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp;
+        while (true) {
+            tmp = dir.resolve(file.getFileName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                Files.createFile(tmp);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // taken; try another name
+            }
+        }
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (view != null && Files.exists(file)) {
+            try {
+                Files.setPosixFilePermissions(tmp, view.readAttributes().permissions());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.delete(tmp);
+                throw e;
+            }
+        }
+        return tmp;
+    }
+}
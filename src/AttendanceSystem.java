@@ -2,24 +2,57 @@
 // Updated UI version with modern styling using basic Swing components only
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.List;
+import javax.swing.Timer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 public class AttendanceSystem extends JFrame {
     private CardLayout cardLayout;
     private JPanel cardPanel;
     private JTable table;
-    private DefaultTableModel tableModel;
+    private AttendanceTableModel tableModel;
     private JComboBox<String> dateCombo, courseCombo;
     private JTextField searchField;
     private ArrayList<Student> students = new ArrayList<>();
-    private Map<String, ArrayList<AttendanceRecord>> attendanceRecords = new HashMap<>();
+    private RosterStore roster;
+    private AttendanceStore attendanceRecords = new AttendanceStore();
+    private AttendanceJournal journal;
+    private AttendanceAnalytics analytics = new AttendanceAnalytics();
+    private StudentSearchIndex searchIndex = new StudentSearchIndex();
+    private List<Student> visibleStudents = students;
+    private Timer searchTimer;
+    private int searchGeneration;
+    private JButton saveButton, addButton, importButton;
+    private JLabel statusLabel;
+    private JProgressBar progressBar;
 
     static class Student implements Serializable {
+        private static final long serialVersionUID = 5924657177676310392L;
         String id, name;
         Student(String id, String name) {
             this.id = id;
@@ -27,7 +60,9 @@ public class AttendanceSystem extends JFrame {
         }
     }
 
+    // Legacy attendance.dat element; only read when migrating that file
     static class AttendanceRecord implements Serializable {
+        private static final long serialVersionUID = 7539498063485267412L;
         String date, course, status;
         AttendanceRecord(String date, String course, String status) {
             this.date = date;
@@ -36,6 +71,1197 @@ public class AttendanceSystem extends JFrame {
         }
     }
 
+    // Attendance history in primitive columns: per student, parallel arrays of
+    // epoch day, interned course id and status code, about 7 bytes a record.
+    // Alongside, each (day, course) keeps one status byte per student slot, so a
+    // roster view is one lookup per row however much history there is.
+    // Snapshots share the histories; a write copies a history first if it was
+    // there when the last snapshot was taken, so taking one is O(students).
+    static class AttendanceStore {
+        private final Map<String, StudentHistory> byStudent = new HashMap<>();
+        private final Map<Long, DayColumn> byDayCourse = new HashMap<>();
+        private final Map<String, Integer> courseIds = new HashMap<>();
+        private final ArrayList<String> courses = new ArrayList<>();
+        private final Map<Integer, String> dateNames = new HashMap<>();
+        private int size;
+        private int epoch;
+
+        interface Visitor {
+            void visit(String id, String date, String course, String status);
+        }
+
+        // Status codes + 1 by student slot for one (day, course); 0 means no record
+        static class DayColumn {
+            byte[] bySlot = new byte[0];
+
+            int get(int slot) {
+                return slot < bySlot.length ? bySlot[slot] : 0;
+            }
+
+            void set(int slot, int code) {
+                if (slot >= bySlot.length) bySlot = Arrays.copyOf(bySlot, Math.max(slot + 1, bySlot.length * 2));
+                bySlot[slot] = (byte) (code + 1);
+            }
+        }
+
+        // Histories as they were when snapshot() was called, for readers on other threads
+        static class Snapshot {
+            private final StudentHistory[] histories;
+            private final List<String> courses;
+            private final int size, epoch;
+            private final Map<Integer, String> dateNames = new HashMap<>();
+            private Map<String, StudentHistory> byId;
+
+            Snapshot(StudentHistory[] histories, List<String> courses, int size, int epoch) {
+                this.histories = histories;
+                this.courses = courses;
+                this.size = size;
+                this.epoch = epoch;
+            }
+
+            int size() {
+                return size;
+            }
+
+            void forEach(Visitor v) {
+                for (StudentHistory h : histories) {
+                    for (int i = 0; i < h.size; i++) {
+                        v.visit(h.id, dateNames.computeIfAbsent(h.days[i], d -> LocalDate.ofEpochDay(d).toString()),
+                                courses.get(h.courses[i]), AttendanceJournal.STATUSES[h.statuses[i]]);
+                    }
+                }
+            }
+
+            // Present/Absent/Late counts for one student between two epoch days (inclusive)
+            int[] counts(String id, String course, int fromDay, int toDay) {
+                if (byId == null) {
+                    byId = new HashMap<>();
+                    for (StudentHistory h : histories) byId.put(h.id, h);
+                }
+                int[] counts = new int[AttendanceJournal.STATUSES.length];
+                StudentHistory h = byId.get(id);
+                int c = courses.indexOf(course);
+                if (h == null || c < 0) return counts;
+                int i = h.find(fromDay, 0);
+                for (i = i < 0 ? -i - 1 : i; i < h.size && h.days[i] <= toDay; i++) {
+                    if (h.courses[i] == c) counts[h.statuses[i]]++;
+                }
+                return counts;
+            }
+        }
+
+        Snapshot snapshot() {
+            epoch++;
+            return new Snapshot(byStudent.values().toArray(new StudentHistory[0]), new ArrayList<>(courses), size, epoch);
+        }
+
+        // A writable store over a snapshot's histories; they are copied as they change,
+        // and the (day, course) columns are rebuilt, on the calling thread
+        static AttendanceStore of(Snapshot snapshot) {
+            AttendanceStore store = new AttendanceStore();
+            store.epoch = snapshot.epoch;
+            for (String course : snapshot.courses) store.courseId(course);
+            for (StudentHistory h : snapshot.histories) {
+                store.byStudent.put(h.id, h);
+                for (int i = 0; i < h.size; i++) {
+                    store.byDayCourse.computeIfAbsent(key(h.days[i], h.courses[i]), k -> new DayColumn()).set(h.slot, h.statuses[i]);
+                }
+            }
+            store.size = snapshot.size;
+            return store;
+        }
+
+        // Returns the previous status, or null when there was no record
+        String put(String id, String date, String course, String status) {
+            StudentHistory h = byStudent.get(id);
+            if (h == null || h.epoch != epoch) {
+                h = h == null ? new StudentHistory(id, byStudent.size()) : h.copy();
+                h.epoch = epoch;
+                byStudent.put(id, h);
+            }
+            int day = (int) LocalDate.parse(date).toEpochDay();
+            int c = courseId(course);
+            int code = AttendanceJournal.statusCode(status);
+            int old = h.put(day, c, (byte) code);
+            byDayCourse.computeIfAbsent(key(day, c), k -> new DayColumn()).set(h.slot, code);
+            if (old < 0) {
+                size++;
+                return null;
+            }
+            return AttendanceJournal.STATUSES[old];
+        }
+
+        // Looks up statuses for one (date, course); the function returns null for no record
+        Function<String, String> statuses(String date, String course) {
+            int day = (int) LocalDate.parse(date).toEpochDay();
+            Integer id = courseIds.get(course);
+            DayColumn column = id == null ? null : byDayCourse.get(key(day, id));
+            if (column == null) return student -> null;
+            return student -> {
+                StudentHistory h = byStudent.get(student);
+                int code = h == null ? 0 : column.get(h.slot);
+                return code == 0 ? null : AttendanceJournal.STATUSES[code - 1];
+            };
+        }
+
+        private static long key(int day, int course) {
+            return (long) day << 16 | course;
+        }
+
+        void forEach(Visitor v) {
+            for (StudentHistory h : byStudent.values()) {
+                for (int i = 0; i < h.size; i++) {
+                    v.visit(h.id, dateName(h.days[i]), courses.get(h.courses[i]), AttendanceJournal.STATUSES[h.statuses[i]]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private int courseId(String course) {
+            Integer id = courseIds.get(course);
+            if (id == null) {
+                if (courses.size() > Short.MAX_VALUE) throw new IllegalStateException("Too many courses");
+                id = courses.size();
+                courseIds.put(course, id);
+                courses.add(course);
+            }
+            return id;
+        }
+
+        private String dateName(int day) {
+            return dateNames.computeIfAbsent(day, d -> LocalDate.ofEpochDay(d).toString());
+        }
+    }
+
+    // Records kept sorted by (day, course), so lookups are a binary search and
+    // the usual chronological appends land at the end without shifting
+    static class StudentHistory {
+        final String id;
+        // Position of this student in every DayColumn
+        final int slot;
+        // Store epoch this copy was made in; older ones may be shared with a snapshot
+        int epoch;
+        int[] days = new int[2];
+        short[] courses = new short[2];
+        byte[] statuses = new byte[2];
+        int size;
+
+        StudentHistory(String id, int slot) {
+            this.id = id;
+            this.slot = slot;
+        }
+
+        StudentHistory copy() {
+            StudentHistory copy = new StudentHistory(id, slot);
+            copy.days = Arrays.copyOf(days, size);
+            copy.courses = Arrays.copyOf(courses, size);
+            copy.statuses = Arrays.copyOf(statuses, size);
+            copy.size = size;
+            return copy;
+        }
+
+        // Index of (day, course), or -(insertion point) - 1 when absent
+        int find(int day, int course) {
+            if (size == 0 || compare(size - 1, day, course) < 0) return -size - 1;
+            int lo = 0, hi = size - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compare(mid, day, course);
+                if (cmp < 0) lo = mid + 1;
+                else if (cmp > 0) hi = mid - 1;
+                else return mid;
+            }
+            return -lo - 1;
+        }
+
+        private int compare(int i, int day, int course) {
+            return days[i] != day ? Integer.compare(days[i], day) : Integer.compare(courses[i], course);
+        }
+
+        // Returns the previous status code, or -1 if (day, course) was new
+        int put(int day, int course, byte status) {
+            int i = find(day, course);
+            if (i >= 0) {
+                int old = statuses[i];
+                statuses[i] = status;
+                return old;
+            }
+            i = -i - 1;
+            if (size == days.length) {
+                int capacity = Math.max(2, size * 2);
+                days = Arrays.copyOf(days, capacity);
+                courses = Arrays.copyOf(courses, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+            }
+            System.arraycopy(days, i, days, i + 1, size - i);
+            System.arraycopy(courses, i, courses, i + 1, size - i);
+            System.arraycopy(statuses, i, statuses, i + 1, size - i);
+            days[i] = day;
+            courses[i] = (short) course;
+            statuses[i] = status;
+            size++;
+            return -1;
+        }
+    }
+
+    // One (studentId, date, course, status) row as stored in the journal
+    static class JournalEntry {
+        String studentId, date, course, status;
+        JournalEntry(String studentId, String date, String course, String status) {
+            this.studentId = studentId;
+            this.date = date;
+            this.course = course;
+            this.status = status;
+        }
+    }
+
+    // Append-only attendance log. Saves write only the changed rows; the file is
+    // rewritten (compacted) in the background once most of it is superseded rows.
+    // All file writes happen on one background thread. Changes are queued and
+    // merged by (student, date, course) for FLUSH_DELAY_MS before being written.
+    static class AttendanceJournal {
+        static final int MAGIC = 0x41544A31; // "ATJ1"
+        static final String[] STATUSES = {"Present", "Absent", "Late"};
+        private static final int MIN_COMPACT_ENTRIES = 1024;
+        private static final long FLUSH_DELAY_MS = 250;
+
+        private final Path file;
+        private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "attendance-journal");
+            t.setDaemon(true);
+            return t;
+        });
+        private final Consumer<IOException> onError;
+        private final Map<String, JournalEntry> pending = new LinkedHashMap<>();
+        private boolean flushScheduled;
+        private int generation;
+        private long entryCount;
+
+        AttendanceJournal(Path file, Consumer<IOException> onError) {
+            this.file = file;
+            this.onError = onError;
+        }
+
+        // Replays the journal into the record map (last write wins). A torn entry
+        // left by a crash mid-append is cut off so later appends stay readable.
+        AttendanceStore replay(IntConsumer percent) throws IOException {
+            AttendanceStore records = new AttendanceStore();
+            entryCount = 0;
+            if (!Files.exists(file)) return records;
+            long size = Math.max(1, Files.size(file));
+            long validLength = 4;
+            int lastPercent = -1;
+            try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                 DataInputStream in = new DataInputStream(counter)) {
+                if (in.readInt() != MAGIC) throw new IOException("Not an attendance journal: " + file);
+                while (true) {
+                    JournalEntry e;
+                    try {
+                        e = readEntry(in);
+                    } catch (EOFException eof) {
+                        break;
+                    }
+                    try {
+                        records.put(e.studentId, e.date, e.course, e.status);
+                    } catch (DateTimeException ex) {
+                        throw new IOException("Bad date in journal: " + e.date);
+                    }
+                    entryCount++;
+                    validLength = counter.count;
+                    int p = (int) (100 * validLength / size);
+                    if (p != lastPercent) percent.accept(lastPercent = p);
+                }
+            }
+            truncateTail(file, validLength);
+            return records;
+        }
+
+        // Converts a legacy attendance.dat (serialized map) into a fresh journal
+        void migrate(Path legacy) throws IOException, ClassNotFoundException {
+            Map<String, ArrayList<AttendanceRecord>> records;
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+                @SuppressWarnings("unchecked")
+                Map<String, ArrayList<AttendanceRecord>> read = (Map<String, ArrayList<AttendanceRecord>>) ois.readObject();
+                records = read;
+            }
+            AttendanceStore live = new AttendanceStore();
+            for (Map.Entry<String, ArrayList<AttendanceRecord>> e : records.entrySet()) {
+                for (AttendanceRecord r : e.getValue()) {
+                    try {
+                        live.put(e.getKey(), r.date, r.course, r.status);
+                    } catch (DateTimeException ex) {
+                        throw new IOException("Bad date in " + legacy + ": " + r.date);
+                    }
+                }
+            }
+            writeSnapshot(live.snapshot());
+            entryCount = live.size();
+        }
+
+        synchronized void append(List<JournalEntry> changes) {
+            if (changes.isEmpty()) return;
+            for (JournalEntry e : changes) {
+                if (pending.put(e.studentId + '\u0000' + e.date + '\u0000' + e.course, e) == null) entryCount++;
+            }
+            if (!flushScheduled) {
+                flushScheduled = true;
+                int gen = generation;
+                writer.schedule(() -> flush(gen), FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush(int gen) {
+            List<JournalEntry> batch;
+            synchronized (this) {
+                if (gen != generation) return;
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                flushScheduled = false;
+            }
+            if (batch.isEmpty()) return;
+            try {
+                boolean fresh = !Files.exists(file);
+                try (FileOutputStream fos = new FileOutputStream(file.toFile(), true);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                    if (fresh) out.writeInt(MAGIC);
+                    for (JournalEntry e : batch) writeEntry(out, e);
+                    out.flush();
+                    fos.getFD().sync();
+                }
+            } catch (IOException ex) {
+                onError.accept(ex);
+            }
+        }
+
+        // Schedules a rewrite when superseded rows dominate the file. The snapshot is
+        // taken now and already contains every queued change, so the queue is dropped
+        // and later appends are written after the compacted file is in place.
+        // Entries are only built from the snapshot on the writer thread.
+        synchronized void compactIfNeeded(AttendanceStore records) {
+            if (entryCount < MIN_COMPACT_ENTRIES || entryCount < 2L * records.size()) return;
+            AttendanceStore.Snapshot live = records.snapshot();
+            entryCount = live.size();
+            pending.clear();
+            flushScheduled = false;
+            generation++;
+            writer.execute(() -> {
+                try {
+                    writeSnapshot(live);
+                } catch (IOException ex) {
+                    onError.accept(ex);
+                }
+            });
+        }
+
+        // Writes out anything still queued and waits for the writer to finish
+        void close() {
+            int gen;
+            synchronized (this) {
+                gen = generation;
+            }
+            writer.execute(() -> flush(gen));
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void writeSnapshot(AttendanceStore.Snapshot live) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                out.writeInt(MAGIC);
+                try {
+                    live.forEach((id, date, course, status) -> {
+                        try {
+                            writeEntry(out, id, date, course, status);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            replaceAtomically(tmp, file);
+        }
+
+        private static void writeEntry(DataOutputStream out, JournalEntry e) throws IOException {
+            writeEntry(out, e.studentId, e.date, e.course, e.status);
+        }
+
+        private static void writeEntry(DataOutputStream out, String id, String date, String course, String status) throws IOException {
+            out.writeUTF(id);
+            out.writeUTF(date);
+            out.writeUTF(course);
+            out.writeByte(statusCode(status));
+        }
+
+        private static JournalEntry readEntry(DataInputStream in) throws IOException {
+            String id = in.readUTF();
+            String date = in.readUTF();
+            String course = in.readUTF();
+            int code = in.readUnsignedByte();
+            if (code >= STATUSES.length) throw new IOException("Bad status code " + code);
+            return new JournalEntry(id, date, course, STATUSES[code]);
+        }
+
+        static int statusCode(String status) {
+            for (int i = 0; i < STATUSES.length; i++) {
+                if (STATUSES[i].equals(status)) return i;
+            }
+            return 0;
+        }
+    }
+
+    // Append-only roster file of (id, name) pairs with a hash index on id. The
+    // legacy students.dat list is converted once; new students are appended.
+    static class RosterStore {
+        static final int MAGIC = 0x41545231; // "ATR1"
+
+        private final Path file;
+        private final ArrayList<Student> students = new ArrayList<>();
+        private final Map<String, Student> byId = new HashMap<>();
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "attendance-roster");
+            t.setDaemon(true);
+            return t;
+        });
+        private final Consumer<IOException> onError;
+
+        RosterStore(Path file, Consumer<IOException> onError) {
+            this.file = file;
+            this.onError = onError;
+        }
+
+        void load(Path legacy, List<Student> seed, IntConsumer percent) throws IOException, ClassNotFoundException {
+            if (!Files.exists(file)) {
+                List<Student> initial = seed;
+                if (Files.exists(legacy)) {
+                    try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+                        @SuppressWarnings("unchecked")
+                        List<Student> read = (List<Student>) ois.readObject();
+                        initial = read;
+                    }
+                }
+                writeAll(initial);
+            }
+            long size = Math.max(1, Files.size(file));
+            long validLength = 4;
+            int lastPercent = -1;
+            try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                 DataInputStream in = new DataInputStream(counter)) {
+                if (in.readInt() != MAGIC) throw new IOException("Not a roster file: " + file);
+                while (true) {
+                    Student s;
+                    try {
+                        s = new Student(in.readUTF(), in.readUTF());
+                    } catch (EOFException eof) {
+                        break;
+                    }
+                    if (byId.putIfAbsent(s.id, s) == null) students.add(s);
+                    validLength = counter.count;
+                    int p = (int) (100 * validLength / size);
+                    if (p != lastPercent) percent.accept(lastPercent = p);
+                }
+            }
+            truncateTail(file, validLength);
+        }
+
+        ArrayList<Student> students() {
+            return students;
+        }
+
+        boolean contains(String id) {
+            return byId.containsKey(id);
+        }
+
+        // Returns false when the id is already taken
+        boolean add(Student s) {
+            if (byId.putIfAbsent(s.id, s) != null) return false;
+            students.add(s);
+            writer.execute(() -> {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true)))) {
+                    out.writeUTF(s.id);
+                    out.writeUTF(s.name);
+                } catch (IOException ex) {
+                    onError.accept(ex);
+                }
+            });
+            return true;
+        }
+
+        // Adds the new ids in one append; returns the students that were added
+        List<Student> addAll(List<Student> batch) {
+            List<Student> added = new ArrayList<>();
+            for (Student s : batch) {
+                if (byId.putIfAbsent(s.id, s) == null) {
+                    students.add(s);
+                    added.add(s);
+                }
+            }
+            if (added.isEmpty()) return added;
+            writer.execute(() -> {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true), 1 << 16))) {
+                    for (Student s : added) {
+                        out.writeUTF(s.id);
+                        out.writeUTF(s.name);
+                    }
+                } catch (IOException ex) {
+                    onError.accept(ex);
+                }
+            });
+            return added;
+        }
+
+        void close() {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void writeAll(List<Student> list) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+                out.writeInt(MAGIC);
+                for (Student s : list) {
+                    out.writeUTF(s.id);
+                    out.writeUTF(s.name);
+                }
+                out.flush();
+                fos.getFD().sync();
+            }
+            replaceAtomically(tmp, file);
+        }
+    }
+
+    // Bulk roster/attendance CSV import. The file is cut into chunks at line
+    // boundaries; each chunk is memory-mapped, decoded and split into fields on
+    // the fork-join pool, then rows are validated in file order.
+    // Columns come from a header row (Student ID, Name, Date, Course, Status in
+    // any order); without one, 2 fields mean id,name and 4 mean id,date,course,status.
+    static class CsvImporter {
+        private static final long CHUNK_BYTES = 4L << 20;
+        private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+        private static final int ID = 0, NAME = 1, DATE_COL = 2, COURSE = 3, STATUS = 4;
+
+        static class Result {
+            final List<Student> students = new ArrayList<>();
+            final List<JournalEntry> entries = new ArrayList<>();
+            final List<String> errors = new ArrayList<>();
+            long lines, skipped;
+        }
+
+        static class Chunk {
+            final long start, end;
+            final List<String[]> lines = new ArrayList<>();
+            Chunk(long start, long end) {
+                this.start = start;
+                this.end = end;
+            }
+        }
+
+        static Result importFile(Path file, Predicate<String> knownId,
+                                 IntConsumer percent) throws IOException {
+            List<Chunk> chunks;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                chunks = split(ch);
+                // An empty file has no chunks and nothing to parse
+                if (chunks.isEmpty()) return new Result();
+                int total = chunks.size();
+                AtomicInteger done = new AtomicInteger();
+                try {
+                    ForkJoinPool.commonPool().invoke(new ParseTask(ch, chunks, 0, total,
+                            () -> percent.accept(done.incrementAndGet() * 100 / Math.max(1, total))));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            return validate(chunks, knownId);
+        }
+
+        private static List<Chunk> split(FileChannel ch) throws IOException {
+            List<Chunk> chunks = new ArrayList<>();
+            long size = ch.size();
+            ByteBuffer probe = ByteBuffer.allocate(1 << 16);
+            long start = 0;
+            while (start < size) {
+                long end = Math.min(size, start + CHUNK_BYTES);
+                while (end < size) {
+                    probe.clear();
+                    int n = ch.read(probe, end);
+                    int nl = -1;
+                    for (int i = 0; i < n && nl < 0; i++) {
+                        if (probe.get(i) == '\n') nl = i;
+                    }
+                    if (nl >= 0) {
+                        end += nl + 1;
+                        break;
+                    }
+                    end += n;
+                }
+                chunks.add(new Chunk(start, end));
+                start = end;
+            }
+            return chunks;
+        }
+
+        static class ParseTask extends RecursiveAction {
+            private final FileChannel ch;
+            private final List<Chunk> chunks;
+            private final int lo, hi;
+            private final Runnable onChunk;
+
+            ParseTask(FileChannel ch, List<Chunk> chunks, int lo, int hi, Runnable onChunk) {
+                this.ch = ch;
+                this.chunks = chunks;
+                this.lo = lo;
+                this.hi = hi;
+                this.onChunk = onChunk;
+            }
+
+            @Override
+            protected void compute() {
+                if (hi - lo > 1) {
+                    int mid = (lo + hi) >>> 1;
+                    invokeAll(new ParseTask(ch, chunks, lo, mid, onChunk), new ParseTask(ch, chunks, mid, hi, onChunk));
+                    return;
+                }
+                Chunk chunk = chunks.get(lo);
+                try {
+                    MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+                    CharSequence text = StandardCharsets.UTF_8.decode(mapped);
+                    int lineStart = chunk.start == 0 && text.length() > 0 && text.charAt(0) == '\uFEFF' ? 1 : 0;
+                    for (int i = lineStart; i <= text.length(); i++) {
+                        if (i == text.length() || text.charAt(i) == '\n') {
+                            int lineEnd = i > lineStart && text.charAt(i - 1) == '\r' ? i - 1 : i;
+                            if (i < text.length() || lineEnd > lineStart) chunk.lines.add(fields(text, lineStart, lineEnd));
+                            lineStart = i + 1;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                onChunk.run();
+            }
+        }
+
+        static String[] fields(CharSequence text, int start, int end) {
+            List<String> out = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < end && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    out.add(field.toString().trim());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            out.add(field.toString().trim());
+            return out.toArray(new String[0]);
+        }
+
+        private static Result validate(List<Chunk> chunks, Predicate<String> knownId) {
+            Result result = new Result();
+            Set<String> newIds = new HashSet<>();
+            int[] columns = null;
+            long line = 0;
+            for (Chunk chunk : chunks) {
+                for (String[] f : chunk.lines) {
+                    line++;
+                    if (f.length == 1 && f[0].isEmpty()) continue;
+                    if (line == 1 && (columns = header(f)) != null) continue;
+                    result.lines++;
+                    int[] cols = columns != null ? columns
+                            : f.length == 2 ? new int[]{0, 1, -1, -1, -1}
+                            : f.length == 4 ? new int[]{0, -1, 1, 2, 3} : null;
+                    if (cols == null || (columns != null && f.length < width(columns))) {
+                        result.errors.add("Line " + line + ": unexpected number of fields (" + f.length + ")");
+                        continue;
+                    }
+                    String id = f[cols[ID]];
+                    if (id.isEmpty()) {
+                        result.errors.add("Line " + line + ": missing student ID");
+                        continue;
+                    }
+                    // The whole line is checked before either its student or its row is kept
+                    String name = cols[NAME] >= 0 ? f[cols[NAME]] : null;
+                    if (name != null && name.isEmpty()) {
+                        result.errors.add("Line " + line + ": missing name for " + id);
+                        continue;
+                    }
+                    JournalEntry entry = null;
+                    if (cols[DATE_COL] >= 0 && cols[COURSE] >= 0 && cols[STATUS] >= 0) {
+                        String date = f[cols[DATE_COL]], course = f[cols[COURSE]], status = canonicalStatus(f[cols[STATUS]]);
+                        String error = name == null && !knownId.test(id) && !newIds.contains(id) ? "unknown student ID " + id
+                                : !validDate(date) ? "bad date '" + date + "' (expected yyyy-MM-dd)"
+                                : course.isEmpty() ? "missing course"
+                                : status == null ? "bad status '" + f[cols[STATUS]] + "'" : null;
+                        if (error != null) {
+                            result.errors.add("Line " + line + ": " + error);
+                            continue;
+                        }
+                        entry = new JournalEntry(id, date, course, status);
+                    }
+                    if (name != null) {
+                        if (knownId.test(id) || !newIds.add(id)) result.skipped++;
+                        else result.students.add(new Student(id, name));
+                    }
+                    if (entry != null) result.entries.add(entry);
+                }
+            }
+            return result;
+        }
+
+        // Column positions for id/name/date/course/status, or null if f is not a header
+        private static int[] header(String[] f) {
+            int[] cols = {-1, -1, -1, -1, -1};
+            for (int i = 0; i < f.length; i++) {
+                switch (f[i].toLowerCase().replace(" ", "").replace("_", "")) {
+                    case "id", "studentid" -> cols[ID] = i;
+                    case "name", "studentname" -> cols[NAME] = i;
+                    case "date" -> cols[DATE_COL] = i;
+                    case "course" -> cols[COURSE] = i;
+                    case "status" -> cols[STATUS] = i;
+                }
+            }
+            return cols[ID] >= 0 ? cols : null;
+        }
+
+        private static int width(int[] cols) {
+            int max = 0;
+            for (int c : cols) max = Math.max(max, c + 1);
+            return max;
+        }
+
+        private static boolean validDate(String date) {
+            if (!DATE.matcher(date).matches()) return false;
+            try {
+                LocalDate.parse(date);
+                return true;
+            } catch (DateTimeException e) {
+                return false;
+            }
+        }
+
+        private static String canonicalStatus(String status) {
+            for (String s : AttendanceJournal.STATUSES) {
+                if (s.equalsIgnoreCase(status)) return s;
+            }
+            return null;
+        }
+    }
+
+    static void replaceAtomically(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Cuts off a torn record left by a crash mid-append so later appends stay readable
+    static void truncateTail(Path file, long validLength) throws IOException {
+        if (validLength < Files.size(file)) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(validLength);
+            }
+        }
+    }
+
+    // Table rows are read straight from the roster and the attendance store;
+    // only statuses edited since the last save are held here, by student id, so
+    // they survive search refreshes and are dropped when the (date, course) changes.
+    static class AttendanceTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Student ID", "Name", "Status"};
+        private List<Student> rows = Collections.emptyList();
+        private Function<String, String> saved = id -> null;
+        private String date, course;
+        private final Map<String, String> edited = new HashMap<>();
+
+        void show(List<Student> rows, String date, String course, Function<String, String> saved) {
+            if (!date.equals(this.date) || !course.equals(this.course)) edited.clear();
+            this.rows = rows;
+            this.date = date;
+            this.course = course;
+            this.saved = saved;
+            fireTableDataChanged();
+        }
+
+        // Unsaved edits, including those of students the current search hides
+        Map<String, String> edits() {
+            return Collections.unmodifiableMap(edited);
+        }
+
+        void clearEdits() {
+            edited.clear();
+            fireTableDataChanged();
+        }
+
+        Student studentAt(int row) {
+            return rows.get(row);
+        }
+
+        String statusAt(int row) {
+            String id = rows.get(row).id;
+            String status = edited.get(id);
+            if (status == null) status = savedStatus(id);
+            return status;
+        }
+
+        // The rows and their current statuses, unaffected by later show() or edits
+        AttendanceReport.Rows snapshot() {
+            Student[] students = rows.toArray(new Student[0]);
+            String[] statuses = new String[students.length];
+            for (int i = 0; i < statuses.length; i++) statuses[i] = statusAt(i);
+            return new AttendanceReport.Rows(students, statuses);
+        }
+
+        private String savedStatus(String id) {
+            String status = saved.apply(id);
+            return status == null ? "Present" : status;
+        }
+
+        @Override public int getRowCount() { return rows.size(); }
+        @Override public int getColumnCount() { return COLUMNS.length; }
+        @Override public String getColumnName(int c) { return COLUMNS[c]; }
+        @Override public boolean isCellEditable(int r, int c) { return c == 2; }
+
+        @Override
+        public Object getValueAt(int r, int c) {
+            return switch (c) {
+                case 0 -> rows.get(r).id;
+                case 1 -> rows.get(r).name;
+                default -> statusAt(r);
+            };
+        }
+
+        @Override
+        public void setValueAt(Object value, int r, int c) {
+            if (c != 2 || value == null) return;
+            String id = rows.get(r).id;
+            if (value.equals(savedStatus(id))) edited.remove(id);
+            else edited.put(id, (String) value);
+            fireTableCellUpdated(r, c);
+        }
+    }
+
+    // n-gram (n <= 3) postings over "id name", lowercased. A query looks up the
+    // rarest of its grams and verifies candidates; a query that extends the
+    // previous one only re-checks the previous matches.
+    static class StudentSearchIndex {
+        private static final int MAX_GRAM = 3;
+        private final ArrayList<Student> indexed = new ArrayList<>();
+        private final ArrayList<String> keys = new ArrayList<>();
+        private final Map<String, int[]> postings = new HashMap<>();
+        private final Map<String, Integer> postingSizes = new HashMap<>();
+        private String lastQuery;
+        private List<Student> lastResult;
+
+        synchronized void add(Student s) {
+            int pos = indexed.size();
+            String key = (s.id + " " + s.name).toLowerCase();
+            indexed.add(s);
+            keys.add(key);
+            Set<String> grams = new HashSet<>();
+            for (int n = 1; n <= MAX_GRAM; n++) {
+                for (int i = 0; i + n <= key.length(); i++) grams.add(key.substring(i, i + n));
+            }
+            for (String g : grams) {
+                int size = postingSizes.getOrDefault(g, 0);
+                int[] list = postings.get(g);
+                if (list == null) list = new int[4];
+                else if (size == list.length) list = Arrays.copyOf(list, size * 2);
+                list[size] = pos;
+                postings.put(g, list);
+                postingSizes.put(g, size + 1);
+            }
+            lastQuery = null;
+            lastResult = null;
+        }
+
+        synchronized List<Student> search(String query) {
+            String q = query.toLowerCase().trim();
+            List<Student> result;
+            if (q.isEmpty()) {
+                result = new ArrayList<>(indexed);
+            } else if (lastQuery != null && !lastQuery.isEmpty() && q.contains(lastQuery)) {
+                result = new ArrayList<>();
+                for (Student s : lastResult) {
+                    if ((s.id + " " + s.name).toLowerCase().contains(q)) result.add(s);
+                }
+            } else {
+                result = lookup(q);
+            }
+            lastQuery = q;
+            lastResult = result;
+            return result;
+        }
+
+        private List<Student> lookup(String q) {
+            int n = Math.min(MAX_GRAM, q.length());
+            String rarest = null;
+            int rarestSize = Integer.MAX_VALUE;
+            for (int i = 0; i + n <= q.length(); i++) {
+                String g = q.substring(i, i + n);
+                int size = postingSizes.getOrDefault(g, 0);
+                if (size < rarestSize) {
+                    rarest = g;
+                    rarestSize = size;
+                }
+            }
+            List<Student> result = new ArrayList<>();
+            if (rarestSize == 0) return result;
+            int[] list = postings.get(rarest);
+            for (int i = 0; i < rarestSize; i++) {
+                int pos = list[i];
+                if (n == q.length() || keys.get(pos).contains(q)) result.add(indexed.get(pos));
+            }
+            return result;
+        }
+    }
+
+    // Streams the grid to CSV or HTML one row at a time through a buffered writer,
+    // counting statuses in the same pass; the preview only ever holds one page.
+    static class AttendanceReport {
+        static final int PAGE_SIZE = 100;
+        private static final int CHUNK_ROWS = 1000;
+
+        // A fixed copy of the grid taken on the EDT; the preview and exports read only this
+        static class Rows {
+            final Student[] students;
+            final String[] statuses;
+
+            Rows(Student[] students, String[] statuses) {
+                this.students = students;
+                this.statuses = statuses;
+            }
+        }
+
+        static int[] summarize(Rows rows) {
+            int[] counts = new int[AttendanceJournal.STATUSES.length];
+            for (String status : rows.statuses) counts[AttendanceJournal.statusCode(status)]++;
+            return counts;
+        }
+
+        static int[] write(Rows snapshot, String date, String course, File file, boolean html,
+                           IntConsumer progress) throws IOException {
+            int[] counts = new int[AttendanceJournal.STATUSES.length];
+            try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                if (html) {
+                    out.write("<html><head><meta charset='UTF-8'></head><body><h2>Attendance Report</h2>\n<p><b>Date:</b> "
+                            + escapeHtml(date) + "<br><b>Course:</b> " + escapeHtml(course) + "</p>\n"
+                            + "<table border='1' cellpadding='5'><tr><th>ID</th><th>Name</th><th>Status</th></tr>\n");
+                } else {
+                    out.write("Student ID,Name,Status,Date,Course\n");
+                }
+                int rows = snapshot.students.length;
+                for (int i = 0; i < rows; i++) {
+                    Student s = snapshot.students[i];
+                    String status = snapshot.statuses[i];
+                    counts[AttendanceJournal.statusCode(status)]++;
+                    if (html) {
+                        out.write("<tr><td>" + escapeHtml(s.id) + "</td><td>" + escapeHtml(s.name) + "</td><td>" + status + "</td></tr>\n");
+                    } else {
+                        out.write(escapeCsv(s.id) + "," + escapeCsv(s.name) + "," + status + "," + escapeCsv(date) + "," + escapeCsv(course) + "\n");
+                    }
+                    if ((i + 1) % CHUNK_ROWS == 0) progress.accept(i + 1);
+                }
+                if (html) {
+                    out.write("</table><p><b>Summary:</b><br>Present: " + counts[0] + "<br>Absent: " + counts[1]
+                            + "<br>Late: " + counts[2] + "</p></body></html>\n");
+                } else {
+                    out.write("\nPresent," + counts[0] + "\nAbsent," + counts[1] + "\nLate," + counts[2] + "\n");
+                }
+                progress.accept(rows);
+            }
+            return counts;
+        }
+
+        // Whole-roster totals for one course over a date range, one student per row.
+        // Counts are computed per student as the rows are written.
+        static int[] writeTerm(Student[] roster, AttendanceStore.Snapshot records, String course, String from, String to,
+                               File file, boolean html, IntConsumer progress) throws IOException {
+            int fromDay = (int) LocalDate.parse(from).toEpochDay();
+            int toDay = (int) LocalDate.parse(to).toEpochDay();
+            int[] totals = new int[AttendanceJournal.STATUSES.length];
+            try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                if (html) {
+                    out.write("<html><head><meta charset='UTF-8'></head><body><h2>Term Attendance Report</h2>\n<p><b>Course:</b> "
+                            + escapeHtml(course) + "<br><b>From:</b> " + from + " <b>To:</b> " + to + "</p>\n"
+                            + "<table border='1' cellpadding='5'><tr><th>ID</th><th>Name</th><th>Present</th><th>Absent</th>"
+                            + "<th>Late</th><th>Attendance %</th></tr>\n");
+                } else {
+                    out.write("Student ID,Name,Present,Absent,Late,Attendance %,Course,From,To\n");
+                }
+                for (int i = 0; i < roster.length; i++) {
+                    Student s = roster[i];
+                    int[] c = records.counts(s.id, course, fromDay, toDay);
+                    for (int k = 0; k < c.length; k++) totals[k] += c[k];
+                    String rate = formatRate(AttendanceAnalytics.rate(c));
+                    if (html) {
+                        out.write("<tr><td>" + escapeHtml(s.id) + "</td><td>" + escapeHtml(s.name) + "</td><td>" + c[0]
+                                + "</td><td>" + c[1] + "</td><td>" + c[2] + "</td><td>" + rate + "</td></tr>\n");
+                    } else {
+                        out.write(escapeCsv(s.id) + "," + escapeCsv(s.name) + "," + c[0] + "," + c[1] + "," + c[2] + "," + rate
+                                + "," + escapeCsv(course) + "," + from + "," + to + "\n");
+                    }
+                    if ((i + 1) % CHUNK_ROWS == 0) progress.accept(i + 1);
+                }
+                String rate = formatRate(AttendanceAnalytics.rate(totals));
+                if (html) {
+                    out.write("</table><p><b>Summary:</b><br>Present: " + totals[0] + "<br>Absent: " + totals[1]
+                            + "<br>Late: " + totals[2] + "<br>Attendance %: " + rate + "</p></body></html>\n");
+                } else {
+                    out.write("\nPresent," + totals[0] + "\nAbsent," + totals[1] + "\nLate," + totals[2] + "\nAttendance %," + rate + "\n");
+                }
+                progress.accept(roster.length);
+            }
+            return totals;
+        }
+
+        static String escapeHtml(String s) {
+            return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+
+        static String escapeCsv(String s) {
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+            return '"' + s.replace("\"", "\"\"") + '"';
+        }
+
+        // One page window over the report rows for the preview
+        static class PageModel extends AbstractTableModel {
+            private static final String[] COLUMNS = {"Student ID", "Name", "Status"};
+            private final Rows source;
+            private int page;
+
+            PageModel(Rows source) {
+                this.source = source;
+            }
+
+            int page() { return page; }
+
+            int pageCount() {
+                return Math.max(1, (source.students.length + PAGE_SIZE - 1) / PAGE_SIZE);
+            }
+
+            void setPage(int page) {
+                this.page = Math.max(0, Math.min(page, pageCount() - 1));
+                fireTableDataChanged();
+            }
+
+            @Override public int getRowCount() {
+                return Math.max(0, Math.min(PAGE_SIZE, source.students.length - page * PAGE_SIZE));
+            }
+            @Override public int getColumnCount() { return COLUMNS.length; }
+            @Override public String getColumnName(int c) { return COLUMNS[c]; }
+            @Override public Object getValueAt(int r, int c) {
+                int row = page * PAGE_SIZE + r;
+                return switch (c) {
+                    case 0 -> source.students[row].id;
+                    case 1 -> source.students[row].name;
+                    default -> source.statuses[row];
+                };
+            }
+        }
+    }
+
+    // Running Present/Absent/Late counters per student and per (course, date),
+    // adjusted on every status change so queries never rescan the history
+    static class AttendanceAnalytics {
+        private final Map<String, int[]> byStudent = new HashMap<>();
+        private final Map<String, TreeMap<String, int[]>> byCourse = new HashMap<>();
+
+        static AttendanceAnalytics build(AttendanceStore records) {
+            AttendanceAnalytics analytics = new AttendanceAnalytics();
+            records.forEach((id, date, course, status) -> analytics.record(id, date, course, null, status));
+            return analytics;
+        }
+
+        void record(String id, String date, String course, String oldStatus, String newStatus) {
+            int[] student = byStudent.computeIfAbsent(id, k -> new int[AttendanceJournal.STATUSES.length]);
+            int[] day = byCourse.computeIfAbsent(course, k -> new TreeMap<>())
+                    .computeIfAbsent(date, k -> new int[AttendanceJournal.STATUSES.length]);
+            if (oldStatus != null) {
+                student[AttendanceJournal.statusCode(oldStatus)]--;
+                day[AttendanceJournal.statusCode(oldStatus)]--;
+            }
+            student[AttendanceJournal.statusCode(newStatus)]++;
+            day[AttendanceJournal.statusCode(newStatus)]++;
+        }
+
+        int[] studentCounts(String id) {
+            return byStudent.getOrDefault(id, new int[AttendanceJournal.STATUSES.length]);
+        }
+
+        // Present and Late both count as attended; NaN when nothing is recorded
+        double studentRate(String id) {
+            return rate(studentCounts(id));
+        }
+
+        SortedMap<String, int[]> courseTrend(String course) {
+            return Collections.unmodifiableSortedMap(byCourse.getOrDefault(course, new TreeMap<>()));
+        }
+
+        List<Student> studentsBelow(List<Student> roster, double percent) {
+            List<Student> below = new ArrayList<>();
+            for (Student s : roster) {
+                double rate = studentRate(s.id);
+                if (!Double.isNaN(rate) && rate < percent) below.add(s);
+            }
+            return below;
+        }
+
+        static double rate(int[] counts) {
+            int total = counts[0] + counts[1] + counts[2];
+            return total == 0 ? Double.NaN : 100.0 * (counts[0] + counts[2]) / total;
+        }
+    }
+
+    static class CountingInputStream extends FilterInputStream {
+        long count;
+        CountingInputStream(InputStream in) { super(in); }
+        @Override public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+        @Override public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
     public AttendanceSystem() {
         setTitle("Attendance System");
         setSize(1000, 700);
@@ -54,8 +1280,15 @@ public class AttendanceSystem extends JFrame {
         createLoginPanel();
         createDashboardPanel();
 
-        loadInitialStudents();
         loadAttendanceRecords();
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                journal.close();
+                roster.close();
+            }
+        });
     }
 
     private void createLoginPanel() {
@@ -117,16 +1350,25 @@ public class AttendanceSystem extends JFrame {
         sideTitle.setBorder(BorderFactory.createEmptyBorder(20, 0, 20, 0));
         sidebar.add(sideTitle);
 
-        JButton saveButton = new JButton("Save");
+        saveButton = new JButton("Save");
+        saveButton.setEnabled(false);
         JButton reportButton = new JButton("Report");
-        JButton addButton = new JButton("Add Student");
+        addButton = new JButton("Add Student");
+        addButton.setEnabled(false);
+        JButton analyticsButton = new JButton("Analytics");
+        importButton = new JButton("Import CSV");
+        importButton.setEnabled(false);
         styleButton(saveButton, new Color(52, 152, 219));
         styleButton(reportButton, new Color(243, 156, 18));
         styleButton(addButton, new Color(46, 204, 113));
+        styleButton(analyticsButton, new Color(155, 89, 182));
+        styleButton(importButton, new Color(26, 188, 156));
 
         sidebar.add(saveButton);
         sidebar.add(reportButton);
         sidebar.add(addButton);
+        sidebar.add(analyticsButton);
+        sidebar.add(importButton);
 
         dashboard.add(sidebar, BorderLayout.WEST);
 
@@ -147,10 +1389,7 @@ public class AttendanceSystem extends JFrame {
         mainPanel.add(topPanel, BorderLayout.NORTH);
 
         // Table
-        String[] cols = {"Student ID", "Name", "Status"};
-        tableModel = new DefaultTableModel(cols, 0) {
-            public boolean isCellEditable(int r, int c) { return c == 2; }
-        };
+        tableModel = new AttendanceTableModel();
         table = new JTable(tableModel);
         table.setRowHeight(28);
         table.setFont(new Font("SansSerif", Font.PLAIN, 14));
@@ -159,6 +1398,15 @@ public class AttendanceSystem extends JFrame {
         JScrollPane tableScroll = new JScrollPane(table);
         mainPanel.add(tableScroll, BorderLayout.CENTER);
 
+        // Status bar
+        JPanel statusPanel = new JPanel(new BorderLayout(10, 0));
+        statusLabel = new JLabel(" ");
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+        statusPanel.add(progressBar, BorderLayout.EAST);
+        mainPanel.add(statusPanel, BorderLayout.SOUTH);
+
         dashboard.add(mainPanel, BorderLayout.CENTER);
         cardPanel.add(dashboard, "dashboard");
 
@@ -166,10 +1414,15 @@ public class AttendanceSystem extends JFrame {
         saveButton.addActionListener(e -> saveAttendance());
         reportButton.addActionListener(e -> generateReport());
         addButton.addActionListener(e -> addNewStudent());
+        analyticsButton.addActionListener(e -> showAnalytics());
+        importButton.addActionListener(e -> importCsv());
         dateCombo.addActionListener(e -> loadStudents());
+        courseCombo.addActionListener(e -> loadStudents());
+        searchTimer = new Timer(150, e -> filter());
+        searchTimer.setRepeats(false);
         searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
-            public void insertUpdate(javax.swing.event.DocumentEvent e) { filter(); }
-            public void removeUpdate(javax.swing.event.DocumentEvent e) { filter(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
             public void changedUpdate(javax.swing.event.DocumentEvent e) {}
         });
     }
@@ -204,83 +1457,237 @@ public class AttendanceSystem extends JFrame {
         return dates;
     }
 
-    private void loadInitialStudents() {
-        students.add(new Student("1", "John Doe"));
-        students.add(new Student("2", "Jane Smith"));
-        students.add(new Student("3", "Ali Khan"));
-        students.add(new Student("4", "Sara Ahmed"));
+    // Roster used when neither students.roster nor students.dat exists yet
+    private static List<Student> initialStudents() {
+        List<Student> initial = new ArrayList<>();
+        initial.add(new Student("1", "John Doe"));
+        initial.add(new Student("2", "Jane Smith"));
+        initial.add(new Student("3", "Ali Khan"));
+        initial.add(new Student("4", "Sara Ahmed"));
+        return initial;
     }
 
     private void loadStudents() {
-        tableModel.setRowCount(0);
         String date = (String) dateCombo.getSelectedItem();
         String course = (String) courseCombo.getSelectedItem();
-
-        for (Student s : students) {
-            String status = "Present";
-            for (AttendanceRecord ar : attendanceRecords.getOrDefault(s.id, new ArrayList<>())) {
-                if (ar.date.equals(date) && ar.course.equals(course)) {
-                    status = ar.status;
-                    break;
-                }
-            }
-            tableModel.addRow(new Object[]{s.id, s.name, status});
-        }
+        tableModel.show(visibleStudents, date, course, attendanceRecords.statuses(date, course));
     }
 
     private void filter() {
-        String q = searchField.getText().toLowerCase();
-        tableModel.setRowCount(0);
-        for (Student s : students) {
-            if (s.name.toLowerCase().contains(q) || s.id.contains(q)) {
-                tableModel.addRow(new Object[]{s.id, s.name, "Present"});
+        String q = searchField.getText();
+        int generation = ++searchGeneration;
+        new SwingWorker<List<Student>, Void>() {
+            @Override
+            protected List<Student> doInBackground() {
+                return q.trim().isEmpty() ? null : searchIndex.search(q);
             }
-        }
+
+            @Override
+            protected void done() {
+                if (generation != searchGeneration) return;
+                try {
+                    List<Student> matches = get();
+                    visibleStudents = matches == null ? students : matches;
+                    loadStudents();
+                } catch (InterruptedException | ExecutionException ignored) {}
+            }
+        }.execute();
     }
 
     private void saveAttendance() {
         String date = (String) dateCombo.getSelectedItem();
         String course = (String) courseCombo.getSelectedItem();
+        if (table.isEditing()) table.getCellEditor().stopCellEditing();
+        List<JournalEntry> changes = new ArrayList<>();
         for (int i = 0; i < tableModel.getRowCount(); i++) {
-            String id = (String) tableModel.getValueAt(i, 0);
-            String status = (String) tableModel.getValueAt(i, 2);
-            ArrayList<AttendanceRecord> list = attendanceRecords.getOrDefault(id, new ArrayList<>());
-            list.removeIf(r -> r.date.equals(date) && r.course.equals(course));
-            list.add(new AttendanceRecord(date, course, status));
-            attendanceRecords.put(id, list);
-        }
-        saveAttendanceToFile();
+            String id = tableModel.studentAt(i).id;
+            String status = tableModel.statusAt(i);
+            if (putRecord(id, date, course, status)) {
+                changes.add(new JournalEntry(id, date, course, status));
+            }
+        }
+        // Edits made before the search hid those rows are saved too
+        for (Map.Entry<String, String> e : tableModel.edits().entrySet()) {
+            if (putRecord(e.getKey(), date, course, e.getValue())) {
+                changes.add(new JournalEntry(e.getKey(), date, course, e.getValue()));
+            }
+        }
+        saveAttendanceToFile(changes);
+        tableModel.clearEdits();
+        tableModel.show(tableModel.rows, date, course, attendanceRecords.statuses(date, course));
         JOptionPane.showMessageDialog(this, "Attendance saved!");
     }
 
+    // Returns true when the stored status actually changed
+    private boolean putRecord(String id, String date, String course, String status) {
+        String previous = attendanceRecords.put(id, date, course, status);
+        if (status.equals(previous)) return false;
+        analytics.record(id, date, course, previous, status);
+        return true;
+    }
+
     private void generateReport() {
+        if (table.isEditing()) table.getCellEditor().stopCellEditing();
         String date = (String) dateCombo.getSelectedItem();
         String course = (String) courseCombo.getSelectedItem();
-        StringBuilder report = new StringBuilder("<html><h2>Attendance Report</h2>");
-        report.append("<p><b>Date:</b> ").append(date).append("<br><b>Course:</b> ").append(course).append("</p>");
-        report.append("<table border='1' cellpadding='5'><tr><th>ID</th><th>Name</th><th>Status</th></tr>");
+        AttendanceReport.Rows rows = tableModel.snapshot();
+        int[] counts = AttendanceReport.summarize(rows);
 
-        int present = 0, absent = 0, late = 0;
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            String id = (String) tableModel.getValueAt(i, 0);
-            String name = (String) tableModel.getValueAt(i, 1);
-            String status = (String) tableModel.getValueAt(i, 2);
-            report.append("<tr><td>").append(id).append("</td><td>").append(name).append("</td><td>").append(status).append("</td></tr>");
-            switch (status) {
-                case "Present" -> present++;
-                case "Absent" -> absent++;
-                case "Late" -> late++;
-            }
-        }
-        report.append("</table><p><b>Summary:</b><br>Present: ").append(present)
-                .append("<br>Absent: ").append(absent)
-                .append("<br>Late: ").append(late).append("</p></html>");
-
-        JEditorPane editorPane = new JEditorPane("text/html", report.toString());
-        editorPane.setEditable(false);
-        JScrollPane scrollPane = new JScrollPane(editorPane);
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        panel.add(new JLabel("<html><h2>Attendance Report</h2><b>Date:</b> " + date + "<br><b>Course:</b> " + course
+                + "<br><b>Summary:</b> Present: " + counts[0] + ", Absent: " + counts[1] + ", Late: " + counts[2]
+                + "</html>"), BorderLayout.NORTH);
+
+        AttendanceReport.PageModel pageModel = new AttendanceReport.PageModel(rows);
+        JTable preview = new JTable(pageModel);
+        JScrollPane scrollPane = new JScrollPane(preview);
         scrollPane.setPreferredSize(new Dimension(500, 400));
-        JOptionPane.showMessageDialog(this, scrollPane, "Report", JOptionPane.INFORMATION_MESSAGE);
+        panel.add(scrollPane, BorderLayout.CENTER);
+
+        JButton prevButton = new JButton("<");
+        JButton nextButton = new JButton(">");
+        JLabel pageLabel = new JLabel();
+        JButton csvButton = new JButton("Export CSV");
+        JButton htmlButton = new JButton("Export HTML");
+        JButton termButton = new JButton("Term Report...");
+        JProgressBar progress = new JProgressBar(0, Math.max(1, rows.students.length));
+        Runnable updatePage = () -> {
+            pageLabel.setText("Page " + (pageModel.page() + 1) + " of " + pageModel.pageCount());
+            prevButton.setEnabled(pageModel.page() > 0);
+            nextButton.setEnabled(pageModel.page() < pageModel.pageCount() - 1);
+        };
+        prevButton.addActionListener(e -> { pageModel.setPage(pageModel.page() - 1); updatePage.run(); });
+        nextButton.addActionListener(e -> { pageModel.setPage(pageModel.page() + 1); updatePage.run(); });
+        csvButton.addActionListener(e -> exportReport(panel, "attendance-" + date + "-" + course + ".csv", progress,
+                (file, p) -> AttendanceReport.write(rows, date, course, file, false, p)));
+        htmlButton.addActionListener(e -> exportReport(panel, "attendance-" + date + "-" + course + ".html", progress,
+                (file, p) -> AttendanceReport.write(rows, date, course, file, true, p)));
+        termButton.addActionListener(e -> exportTermReport(panel, course, progress));
+        updatePage.run();
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(prevButton);
+        controls.add(pageLabel);
+        controls.add(nextButton);
+        controls.add(csvButton);
+        controls.add(htmlButton);
+        controls.add(termButton);
+        controls.add(progress);
+        panel.add(controls, BorderLayout.SOUTH);
+
+        JOptionPane.showMessageDialog(this, panel, "Report", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    interface ReportExport {
+        void write(File file, IntConsumer progress) throws IOException;
+    }
+
+    // Asks for the range and format, then exports every roster student's totals.
+    // The roster and a history snapshot are taken here so the writer never reads live state.
+    private void exportTermReport(Component parent, String course, JProgressBar progress) {
+        String[] recent = getRecentDates();
+        JTextField fromField = new JTextField(recent[recent.length - 1]);
+        JTextField toField = new JTextField(recent[0]);
+        JComboBox<String> format = new JComboBox<>(new String[]{"CSV", "HTML"});
+        JPanel form = new JPanel(new GridLayout(3, 2, 10, 10));
+        form.add(new JLabel("From (yyyy-MM-dd):"));
+        form.add(fromField);
+        form.add(new JLabel("To (yyyy-MM-dd):"));
+        form.add(toField);
+        form.add(new JLabel("Format:"));
+        form.add(format);
+        if (JOptionPane.showConfirmDialog(parent, form, "Term Report - " + course, JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) return;
+        String from = fromField.getText().trim();
+        String to = toField.getText().trim();
+        try {
+            if (LocalDate.parse(from).isAfter(LocalDate.parse(to))) {
+                JOptionPane.showMessageDialog(parent, "The start date is after the end date.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        } catch (DateTimeException ex) {
+            JOptionPane.showMessageDialog(parent, "Dates must be in yyyy-MM-dd form.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        boolean html = format.getSelectedIndex() == 1;
+        Student[] roster = students.toArray(new Student[0]);
+        AttendanceStore.Snapshot records = attendanceRecords.snapshot();
+        progress.setMaximum(Math.max(1, roster.length));
+        exportReport(parent, "attendance-" + course + "-" + from + "-to-" + to + (html ? ".html" : ".csv"), progress,
+                (file, p) -> AttendanceReport.writeTerm(roster, records, course, from, to, file, html, p));
+    }
+
+    // Exports read only data copied on the EDT, so the grid can change while they run
+    private void exportReport(Component parent, String fileName, JProgressBar progress, ReportExport export) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(fileName));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                export.write(file, this::publish);
+                return null;
+            }
+
+            @Override
+            protected void process(List<Integer> rows) {
+                progress.setValue(rows.get(rows.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    progress.setValue(progress.getMaximum());
+                    JOptionPane.showMessageDialog(parent, "Report exported to " + file.getName());
+                } catch (InterruptedException | ExecutionException e) {
+                    JOptionPane.showMessageDialog(parent, "Error exporting report: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void showAnalytics() {
+        String course = (String) courseCombo.getSelectedItem();
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Students", new JScrollPane(new JTable(studentRateModel(students))));
+        tabs.addTab("Below 75%", new JScrollPane(new JTable(studentRateModel(analytics.studentsBelow(students, 75)))));
+
+        List<Map.Entry<String, int[]>> trend = new ArrayList<>(analytics.courseTrend(course).entrySet());
+        tabs.addTab(course + " Trend", new JScrollPane(new JTable(new AbstractTableModel() {
+            private final String[] cols = {"Date", "Present", "Absent", "Late", "Attendance %"};
+            @Override public int getRowCount() { return trend.size(); }
+            @Override public int getColumnCount() { return cols.length; }
+            @Override public String getColumnName(int c) { return cols[c]; }
+            @Override public Object getValueAt(int r, int c) {
+                Map.Entry<String, int[]> e = trend.get(r);
+                return c == 0 ? e.getKey() : c == 4 ? formatRate(AttendanceAnalytics.rate(e.getValue())) : e.getValue()[c - 1];
+            }
+        })));
+        tabs.setPreferredSize(new Dimension(550, 400));
+        JOptionPane.showMessageDialog(this, tabs, "Analytics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private AbstractTableModel studentRateModel(List<Student> rows) {
+        return new AbstractTableModel() {
+            private final String[] cols = {"Student ID", "Name", "Present", "Absent", "Late", "Attendance %"};
+            @Override public int getRowCount() { return rows.size(); }
+            @Override public int getColumnCount() { return cols.length; }
+            @Override public String getColumnName(int c) { return cols[c]; }
+            @Override public Object getValueAt(int r, int c) {
+                Student s = rows.get(r);
+                return switch (c) {
+                    case 0 -> s.id;
+                    case 1 -> s.name;
+                    case 5 -> formatRate(analytics.studentRate(s.id));
+                    default -> analytics.studentCounts(s.id)[c - 2];
+                };
+            }
+        };
+    }
+
+    private static String formatRate(double rate) {
+        return Double.isNaN(rate) ? "-" : String.format("%.1f", rate);
     }
 
     private void addNewStudent() {
@@ -296,9 +1703,11 @@ public class AttendanceSystem extends JFrame {
             String id = idField.getText().trim();
             String name = nameField.getText().trim();
             if (!id.isEmpty() && !name.isEmpty()) {
-                if (students.stream().noneMatch(s -> s.id.equals(id))) {
-                    students.add(new Student(id, name));
-                    loadStudents();
+                Student student = new Student(id, name);
+                if (roster.add(student)) {
+                    searchIndex.add(student);
+                    if (searchField.getText().trim().isEmpty()) loadStudents();
+                    else filter();
                 } else {
                     JOptionPane.showMessageDialog(this, "Student ID already exists.");
                 }
@@ -306,17 +1715,165 @@ public class AttendanceSystem extends JFrame {
         }
     }
 
-    private void saveAttendanceToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("attendance.dat"))) {
-            oos.writeObject(attendanceRecords);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error saving attendance.");
-        }
+    // Everything the import builds off the EDT before it is swapped in
+    static class ImportedAttendance {
+        CsvImporter.Result result;
+        AttendanceStore records;
+        AttendanceAnalytics analytics;
+        List<JournalEntry> changes = new ArrayList<>();
+    }
+
+    // Roster edits and saves are disabled while the import runs, so the parser can
+    // read the id index. Rows are applied on the worker to a store over a snapshot
+    // of the attendance history and journaled there; done() only swaps it in.
+    private void importCsv() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        Path file = chooser.getSelectedFile().toPath();
+        saveButton.setEnabled(false);
+        addButton.setEnabled(false);
+        importButton.setEnabled(false);
+        showProgress("Importing " + file.getFileName() + "...");
+        AttendanceStore.Snapshot snapshot = attendanceRecords.snapshot();
+        new SwingWorker<ImportedAttendance, Integer>() {
+            @Override
+            protected ImportedAttendance doInBackground() throws IOException {
+                ImportedAttendance imported = new ImportedAttendance();
+                imported.result = CsvImporter.importFile(file, roster::contains, this::publish);
+                AttendanceStore base = AttendanceStore.of(snapshot);
+                imported.records = base;
+                for (JournalEntry e : imported.result.entries) {
+                    if (!e.status.equals(base.put(e.studentId, e.date, e.course, e.status))) imported.changes.add(e);
+                }
+                imported.analytics = imported.changes.isEmpty() ? null : AttendanceAnalytics.build(base);
+                journal.append(imported.changes);
+                journal.compactIfNeeded(base);
+                return imported;
+            }
+
+            @Override
+            protected void process(List<Integer> percents) {
+                progressBar.setValue(percents.get(percents.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                hideProgress();
+                saveButton.setEnabled(true);
+                addButton.setEnabled(true);
+                importButton.setEnabled(true);
+                ImportedAttendance imported;
+                try {
+                    imported = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText("Import failed");
+                    JOptionPane.showMessageDialog(AttendanceSystem.this, "Error importing file: " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                CsvImporter.Result result = imported.result;
+                List<JournalEntry> changes = imported.changes;
+                List<Student> added = roster.addAll(result.students);
+                for (Student s : added) searchIndex.add(s);
+                if (!changes.isEmpty()) {
+                    attendanceRecords = imported.records;
+                    analytics = imported.analytics;
+                }
+                if (searchField.getText().trim().isEmpty()) loadStudents();
+                else filter();
+
+                String summary = "Read " + result.lines + " rows: " + added.size() + " students added, "
+                        + changes.size() + " attendance changes, " + result.skipped + " existing students skipped, "
+                        + result.errors.size() + " errors";
+                statusLabel.setText(summary);
+                if (result.errors.isEmpty()) {
+                    JOptionPane.showMessageDialog(AttendanceSystem.this, summary, "Import", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JTextArea errors = new JTextArea(String.join("\n", result.errors.subList(0, Math.min(1000, result.errors.size()))));
+                    errors.setEditable(false);
+                    JScrollPane scroll = new JScrollPane(errors);
+                    scroll.setPreferredSize(new Dimension(500, 300));
+                    JPanel panel = new JPanel(new BorderLayout(5, 5));
+                    panel.add(new JLabel(summary), BorderLayout.NORTH);
+                    panel.add(scroll, BorderLayout.CENTER);
+                    JOptionPane.showMessageDialog(AttendanceSystem.this, panel, "Import", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void saveAttendanceToFile(List<JournalEntry> changes) {
+        journal.append(changes);
+        journal.compactIfNeeded(attendanceRecords);
+    }
+
+    // Everything the loader builds off the EDT before it is swapped in
+    static class LoadedAttendance {
+        StudentSearchIndex searchIndex;
+        AttendanceStore records;
+        AttendanceAnalytics analytics;
     }
 
     private void loadAttendanceRecords() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream("attendance.dat"))) {
-            attendanceRecords = (Map<String, ArrayList<AttendanceRecord>>) ois.readObject();
-        } catch (Exception ignored) {}
+        journal = new AttendanceJournal(Paths.get("attendance.journal"), e -> SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(this, "Error saving attendance: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)));
+        roster = new RosterStore(Paths.get("students.roster"), e -> SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(this, "Error saving student: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE)));
+        showProgress("Loading students and attendance...");
+        new SwingWorker<LoadedAttendance, Integer>() {
+            @Override
+            protected LoadedAttendance doInBackground() throws Exception {
+                LoadedAttendance loaded = new LoadedAttendance();
+                roster.load(Paths.get("students.dat"), initialStudents(), p -> publish(p / 2));
+                loaded.searchIndex = new StudentSearchIndex();
+                for (Student s : roster.students()) loaded.searchIndex.add(s);
+
+                Path legacy = Paths.get("attendance.dat");
+                if (!Files.exists(Paths.get("attendance.journal")) && Files.exists(legacy)) {
+                    journal.migrate(legacy);
+                }
+                loaded.records = journal.replay(p -> publish(50 + p / 2));
+                loaded.analytics = AttendanceAnalytics.build(loaded.records);
+                return loaded;
+            }
+
+            @Override
+            protected void process(List<Integer> percents) {
+                progressBar.setValue(percents.get(percents.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                hideProgress();
+                try {
+                    LoadedAttendance loaded = get();
+                    students = roster.students();
+                    visibleStudents = students;
+                    searchIndex = loaded.searchIndex;
+                    attendanceRecords = loaded.records;
+                    analytics = loaded.analytics;
+                    statusLabel.setText(students.size() + " students, " + attendanceRecords.size() + " attendance records loaded");
+                    saveButton.setEnabled(true);
+                    addButton.setEnabled(true);
+                    importButton.setEnabled(true);
+                    loadStudents();
+                    journal.compactIfNeeded(attendanceRecords);
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText("Attendance could not be loaded");
+                    JOptionPane.showMessageDialog(AttendanceSystem.this, "Error loading attendance: " + e.getCause(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void showProgress(String message) {
+        statusLabel.setText(message);
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+    }
+
+    private void hideProgress() {
+        progressBar.setVisible(false);
     }
-}
+}
\ No newline at end of file
@@ -1,7 +1,42 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 public class DrawingApplication extends JFrame {
     private JPanel canvas;
@@ -9,21 +44,832 @@ public class DrawingApplication extends JFrame {
     private String currentTool = "pencil";
     private int strokeWidth = 2;
     private ArrayList<Shape> shapes = new ArrayList<>();
-    private ArrayList<Shape> undoneShapes = new ArrayList<>();
+    private History history = new History(Long.getLong("drawing.historyBytes", 32L << 20));
+    private long gestureStart;
+    private ShapeIndex index = new ShapeIndex();
+    private long nextSeq;
     private Point startPoint;
+    // Committed shapes rasterized once; only currentShape is drawn per repaint
+    private BufferedImage cache;
+    private Shape currentShape;
+    // Damaged canvas area, flushed as one repaint per frame
+    private Rectangle damage;
+    private Timer damageTimer;
+    // Raw drag samples for the pencil, applied to currentShape once per frame
+    private int[] samples = new int[64];
+    private int sampleCount;
+    private PaintStats stats = new PaintStats();
+    private Timer hudTimer;
+    private boolean hudRepaintPending;
+
+    // Shared, immutable color and stroke pair. Shapes point at one registry entry
+    // instead of carrying their own Color, and the strokes are built once here
+    // rather than per shape on every paint.
+    static final class Style {
+        private static final Map<Long, Style> REGISTRY = new ConcurrentHashMap<>();
+
+        final Color color;
+        final int width;
+        // Pencil strokes use round caps and joins, the other tools the default stroke
+        final BasicStroke round, plain;
+
+        private Style(Color color, int width) {
+            this.color = color;
+            this.width = width;
+            this.round = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+            this.plain = new BasicStroke(width);
+        }
+
+        static Style of(Color color, int width) {
+            return REGISTRY.computeIfAbsent(((long) color.getRGB() << 32) | (width & 0xFFFFFFFFL),
+                    k -> new Style(new Color(color.getRGB(), true), width));
+        }
+    }
 
     static class Shape {
+        // Drag samples closer than this to the last kept point are dropped
+        static final int MIN_STEP = 2;
+        // Ramer-Douglas-Peucker tolerance applied when a stroke is finished, in pixels
+        static final double SIMPLIFY_TOLERANCE = 0.75;
+
         String type;
-        Point start, end;
-        Color color;
-        int stroke;
+        // First and last point; for rectangles and ellipses the opposite corners
+        int x1, y1, x2, y2;
+        Style style;
+        // Pencil strokes: x,y pairs of the whole drag, plus the polyline path while
+        // drawing, replaced by the smoothed spline once finished
+        int[] points;
+        int pointCount;
+        int minX, minY, maxX, maxY;
+        Path2D.Float path;
+        // Paint order; assigned when the shape enters the drawing
+        long seq;
 
-        Shape(String type, Point start, Point end, Color color, int stroke) {
+        Shape(String type, int x1, int y1, int x2, int y2, Style style) {
             this.type = type;
-            this.start = start;
-            this.end = end;
-            this.color = color;
-            this.stroke = stroke;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            this.style = style;
+        }
+
+        static Shape stroke(int x, int y, Style style) {
+            Shape shape = new Shape("pencil", x, y, x, y, style);
+            shape.points = new int[]{x, y, 0, 0, 0, 0, 0, 0};
+            shape.pointCount = 1;
+            shape.minX = shape.maxX = x;
+            shape.minY = shape.maxY = y;
+            shape.path = new Path2D.Float();
+            shape.path.moveTo(x, y);
+            return shape;
+        }
+
+        // A finished pencil stroke from x,y pairs, as read back from a file
+        static Shape polyline(int[] points, int count, Style style) {
+            Shape shape = new Shape("pencil", points[0], points[1], points[count * 2 - 2], points[count * 2 - 1], style);
+            shape.points = points;
+            shape.pointCount = count;
+            shape.smooth();
+            return shape;
+        }
+
+        // Adds a drag sample unless it is within MIN_STEP of the last kept point
+        void addSample(int x, int y) {
+            int dx = x - x2, dy = y - y2;
+            if (dx * dx + dy * dy < MIN_STEP * MIN_STEP) return;
+            addPoint(x, y);
+        }
+
+        void addPoint(int x, int y) {
+            if (x == x2 && y == y2) return;
+            if (pointCount * 2 == points.length) points = Arrays.copyOf(points, points.length * 2);
+            points[pointCount * 2] = x;
+            points[pointCount * 2 + 1] = y;
+            pointCount++;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            x2 = x;
+            y2 = y;
+            path.lineTo(x, y);
+        }
+
+        // Simplifies the stroke once the drag ends and replaces the live path with
+        // a spline through the remaining points
+        void finish() {
+            points = simplify(points, pointCount, SIMPLIFY_TOLERANCE);
+            pointCount = points.length / 2;
+            smooth();
+        }
+
+        // Builds the Catmull-Rom spline once, as cubic Bezier segments, and takes the
+        // bounds from it, including the control points the curve can bulge towards
+        private void smooth() {
+            minX = maxX = points[0];
+            minY = maxY = points[1];
+            path = new Path2D.Float(Path2D.WIND_NON_ZERO, pointCount);
+            path.moveTo(points[0], points[1]);
+            if (pointCount == 2) {
+                path.lineTo(points[2], points[3]);
+                include(points[2], points[3]);
+            } else {
+                for (int i = 0; i < pointCount - 1; i++) {
+                    int p0 = Math.max(i - 1, 0) * 2, p1 = i * 2, p2 = (i + 1) * 2, p3 = Math.min(i + 2, pointCount - 1) * 2;
+                    float c1x = points[p1] + (points[p2] - points[p0]) / 6f, c1y = points[p1 + 1] + (points[p2 + 1] - points[p0 + 1]) / 6f;
+                    float c2x = points[p2] - (points[p3] - points[p1]) / 6f, c2y = points[p2 + 1] - (points[p3 + 1] - points[p1 + 1]) / 6f;
+                    path.curveTo(c1x, c1y, c2x, c2y, points[p2], points[p2 + 1]);
+                    include(c1x, c1y);
+                    include(c2x, c2y);
+                    include(points[p2], points[p2 + 1]);
+                }
+            }
+            path.trimToSize();
+        }
+
+        private void include(float x, float y) {
+            minX = Math.min(minX, (int) Math.floor(x));
+            minY = Math.min(minY, (int) Math.floor(y));
+            maxX = Math.max(maxX, (int) Math.ceil(x));
+            maxY = Math.max(maxY, (int) Math.ceil(y));
+        }
+
+        // Ramer-Douglas-Peucker over x,y pairs, keeping both end points. Uses an
+        // explicit stack so very long strokes cannot overflow the call stack.
+        static int[] simplify(int[] pts, int count, double tolerance) {
+            if (count <= 2) return Arrays.copyOf(pts, count * 2);
+            boolean[] keep = new boolean[count];
+            keep[0] = keep[count - 1] = true;
+            int kept = 2;
+            ArrayDeque<int[]> spans = new ArrayDeque<>();
+            spans.push(new int[]{0, count - 1});
+            double tol2 = tolerance * tolerance;
+            while (!spans.isEmpty()) {
+                int[] span = spans.pop();
+                int a = span[0], b = span[1];
+                double ax = pts[a * 2], ay = pts[a * 2 + 1];
+                double dx = pts[b * 2] - ax, dy = pts[b * 2 + 1] - ay;
+                double len2 = dx * dx + dy * dy;
+                int far = -1;
+                double farDist = tol2;
+                for (int i = a + 1; i < b; i++) {
+                    double px = pts[i * 2] - ax, py = pts[i * 2 + 1] - ay;
+                    double d2;
+                    if (len2 == 0) {
+                        d2 = px * px + py * py;
+                    } else {
+                        double cross = px * dy - py * dx;
+                        d2 = cross * cross / len2;
+                    }
+                    if (d2 > farDist) {
+                        farDist = d2;
+                        far = i;
+                    }
+                }
+                if (far < 0) continue;
+                keep[far] = true;
+                kept++;
+                spans.push(new int[]{a, far});
+                spans.push(new int[]{far, b});
+            }
+            int[] out = new int[kept * 2];
+            for (int i = 0, j = 0; i < count; i++) {
+                if (!keep[i]) continue;
+                out[j++] = pts[i * 2];
+                out[j++] = pts[i * 2 + 1];
+            }
+            return out;
+        }
+
+        // Area the shape can paint, inflated by half the stroke plus antialiasing
+        Rectangle bounds() {
+            if (points != null) return inflate(new Rectangle(minX, minY, maxX - minX, maxY - minY), style.width);
+            return inflate(new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2)), style.width);
+        }
+
+        static Rectangle inflate(Rectangle r, int stroke) {
+            int pad = stroke / 2 + 2;
+            r.grow(pad, pad);
+            r.width++;
+            r.height++;
+            return r;
+        }
+
+        BasicStroke stroke() {
+            return type.equals("pencil") ? style.round : style.plain;
+        }
+
+        // Outline that is stroked when drawn, used for hit-testing
+        java.awt.Shape geometry() {
+            return switch (type) {
+                case "pencil" -> pointCount <= 1
+                        ? new Ellipse2D.Float(x1 - style.width / 2f, y1 - style.width / 2f, style.width, style.width)
+                        : toPath();
+                case "line" -> new Line2D.Float(x1, y1, x2, y2);
+                case "ellipse" -> new Ellipse2D.Float(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2));
+                default -> new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2));
+            };
+        }
+
+        boolean hit(Point p, int tolerance) {
+            if (type.equals("pencil") && pointCount <= 1) return p.distance(x1, y1) <= style.width / 2.0 + tolerance;
+            return new BasicStroke(style.width + 2f * tolerance, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND).createStrokedShape(geometry()).contains(p);
+        }
+
+        // Rough heap cost, used for the undo history budget; a spline segment
+        // holds six floats and a type byte
+        long bytes() {
+            return 80 + (points == null ? 0 : 16 + points.length * 4L) + (path == null ? 0 : 64 + pointCount * 25L);
+        }
+
+        // Shared and read-only once the stroke is finished; drawn and hit-tested as is
+        Path2D.Float toPath() {
+            return path;
+        }
+    }
+
+    // Uniform grid over shape bounds. A shape is listed in every cell its bounds
+    // touch, so region queries and hit-tests only look at nearby shapes.
+    static class ShapeIndex {
+        static final int CELL = 128;
+        private final Map<Long, ArrayList<Shape>> cells = new HashMap<>();
+
+        void add(Shape shape) {
+            Rectangle b = shape.bounds();
+            for (int cy = cell(b.y); cy <= cell(b.y + b.height); cy++) {
+                for (int cx = cell(b.x); cx <= cell(b.x + b.width); cx++) {
+                    cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(shape);
+                }
+            }
+        }
+
+        void remove(Shape shape) {
+            Rectangle b = shape.bounds();
+            for (int cy = cell(b.y); cy <= cell(b.y + b.height); cy++) {
+                for (int cx = cell(b.x); cx <= cell(b.x + b.width); cx++) {
+                    ArrayList<Shape> list = cells.get(key(cx, cy));
+                    if (list == null) continue;
+                    list.remove(shape);
+                    if (list.isEmpty()) cells.remove(key(cx, cy));
+                }
+            }
+        }
+
+        void clear() {
+            cells.clear();
+        }
+
+        // Shapes whose bounds intersect r, in paint order
+        List<Shape> query(Rectangle r) {
+            Map<Shape, Boolean> found = new IdentityHashMap<>();
+            for (int cy = cell(r.y); cy <= cell(r.y + r.height); cy++) {
+                for (int cx = cell(r.x); cx <= cell(r.x + r.width); cx++) {
+                    ArrayList<Shape> list = cells.get(key(cx, cy));
+                    if (list == null) continue;
+                    for (Shape s : list) {
+                        if (s.bounds().intersects(r)) found.put(s, Boolean.TRUE);
+                    }
+                }
+            }
+            List<Shape> result = new ArrayList<>(found.keySet());
+            result.sort(Comparator.comparingLong(s -> s.seq));
+            return result;
+        }
+
+        // Topmost shape drawn within tolerance pixels of p, or null
+        Shape hit(Point p, int tolerance) {
+            Shape top = null;
+            for (int cy = cell(p.y - tolerance); cy <= cell(p.y + tolerance); cy++) {
+                for (int cx = cell(p.x - tolerance); cx <= cell(p.x + tolerance); cx++) {
+                    ArrayList<Shape> list = cells.get(key(cx, cy));
+                    if (list == null) continue;
+                    for (Shape s : list) {
+                        if ((top == null || s.seq > top.seq) && s.hit(p, tolerance)) top = s;
+                    }
+                }
+            }
+            return top;
+        }
+
+        private static int cell(int v) {
+            return Math.floorDiv(v, CELL);
+        }
+
+        private static long key(int cx, int cy) {
+            return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+        }
+    }
+
+    // Undo/redo as edits that add or remove shapes, kept within a memory budget.
+    // Every step costs EDIT_BYTES plus a reference per shape; on top of that only
+    // shapes that are no longer in the drawing count: erased shapes on the undo
+    // side and undone shapes on the redo side. Pencil strokes started within
+    // MERGE_MS of the previous one join its step. When over budget (or half of it
+    // when the heap runs low) the oldest steps of the heavier side are dropped.
+    static class History {
+        static final long MERGE_MS = 250;
+        static final long EDIT_BYTES = 64;
+        private static final long REF_BYTES = 8;
+        private final long budget;
+        private final ArrayDeque<Edit> undo = new ArrayDeque<>();
+        private final ArrayDeque<Edit> redo = new ArrayDeque<>();
+        private long undoBytes, redoBytes;
+
+        static class Edit {
+            final List<Shape> added = new ArrayList<>();
+            final List<Shape> removed = new ArrayList<>();
+            final long gesture;
+            long endedAt;
+
+            Edit(long gesture, long endedAt) {
+                this.gesture = gesture;
+                this.endedAt = endedAt;
+            }
+
+            boolean pencilOnly() {
+                if (!removed.isEmpty() || added.isEmpty()) return false;
+                for (Shape s : added) {
+                    if (!s.type.equals("pencil")) return false;
+                }
+                return true;
+            }
+        }
+
+        History(long budget) {
+            this.budget = budget;
+        }
+
+        void added(Shape shape, long gesture, long now) {
+            clearRedo();
+            Edit top = undo.peekLast();
+            if (top != null && shape.type.equals("pencil") && top.pencilOnly() && gesture - top.endedAt <= MERGE_MS) {
+                top.added.add(shape);
+                top.endedAt = now;
+            } else {
+                Edit edit = new Edit(gesture, now);
+                edit.added.add(shape);
+                undo.addLast(edit);
+                undoBytes += EDIT_BYTES;
+            }
+            undoBytes += REF_BYTES;
+            evict();
+        }
+
+        void removed(Shape shape, long gesture, long now) {
+            clearRedo();
+            Edit top = undo.peekLast();
+            if (top == null || top.gesture != gesture || !top.added.isEmpty()) {
+                top = new Edit(gesture, now);
+                undo.addLast(top);
+                undoBytes += EDIT_BYTES;
+            }
+            top.removed.add(shape);
+            top.endedAt = now;
+            undoBytes += REF_BYTES + shape.bytes();
+            evict();
+        }
+
+        Edit undo() {
+            Edit edit = undo.pollLast();
+            if (edit == null) return null;
+            redo.addLast(edit);
+            undoBytes -= cost(edit, true);
+            redoBytes += cost(edit, false);
+            evict();
+            return edit;
+        }
+
+        Edit redo() {
+            Edit edit = redo.pollLast();
+            if (edit == null) return null;
+            undo.addLast(edit);
+            redoBytes -= cost(edit, false);
+            undoBytes += cost(edit, true);
+            evict();
+            return edit;
+        }
+
+        void clear() {
+            undo.clear();
+            redo.clear();
+            undoBytes = redoBytes = 0;
+        }
+
+        private void clearRedo() {
+            redo.clear();
+            redoBytes = 0;
+        }
+
+        // Drops from whichever side holds more, so undoing one large stroke
+        // gives up redo steps rather than the cheap undo steps behind it
+        private void evict() {
+            Runtime rt = Runtime.getRuntime();
+            long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+            long limit = free < rt.maxMemory() / 10 ? budget / 2 : budget;
+            while (undoBytes + redoBytes > limit) {
+                if (redoBytes >= undoBytes) redoBytes -= cost(redo.pollFirst(), false);
+                else undoBytes -= cost(undo.pollFirst(), true);
+            }
+        }
+
+        private static long cost(Edit edit, boolean undoSide) {
+            return EDIT_BYTES + REF_BYTES * (edit.added.size() + edit.removed.size())
+                    + bytes(undoSide ? edit.removed : edit.added);
+        }
+
+        private static long bytes(List<Shape> shapes) {
+            long total = 0;
+            for (Shape s : shapes) total += s.bytes();
+            return total;
+        }
+    }
+
+    // Binary drawing file: magic, version, a table of (ARGB, stroke) styles, then
+    // each shape as type byte, style index and its points, with coordinates as
+    // zigzag varint deltas from the previous point. Written and read through NIO
+    // channels; files over MAP_THRESHOLD are memory-mapped rather than read in.
+    static class DrawingFile {
+        static final int MAGIC = 0x44525731; // "DRW1"
+        static final int VERSION = 1;
+        static final String[] TYPES = {"pencil", "line", "rectangle", "ellipse"};
+        private static final long MAP_THRESHOLD = 4L << 20;
+
+        static void write(Path file, List<Shape> shapes) throws IOException {
+            Map<Style, Integer> styleIds = new IdentityHashMap<>();
+            List<Style> styles = new ArrayList<>();
+            for (Shape s : shapes) {
+                if (styleIds.putIfAbsent(s.style, styles.size()) == null) styles.add(s.style);
+            }
+            Path tmp = AtomicFiles.tempSibling(file);
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+                buf.putInt(MAGIC).put((byte) VERSION);
+                putVarint(buf, styles.size());
+                for (Style style : styles) {
+                    ensure(ch, buf, 16);
+                    buf.putInt(style.color.getRGB());
+                    putVarint(buf, style.width);
+                }
+                putVarint(buf, shapes.size());
+                for (Shape s : shapes) {
+                    ensure(ch, buf, 32);
+                    buf.put((byte) Arrays.asList(TYPES).indexOf(s.type));
+                    putVarint(buf, styleIds.get(s.style));
+                    int[] pts = s.points != null ? s.points : new int[]{s.x1, s.y1, s.x2, s.y2};
+                    int count = s.points != null ? s.pointCount : 2;
+                    putVarint(buf, count);
+                    int px = 0, py = 0;
+                    for (int i = 0; i < count; i++) {
+                        ensure(ch, buf, 10);
+                        putVarint(buf, zigzag(pts[i * 2] - px));
+                        putVarint(buf, zigzag(pts[i * 2 + 1] - py));
+                        px = pts[i * 2];
+                        py = pts[i * 2 + 1];
+                    }
+                }
+                flush(ch, buf);
+                ch.force(true);
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        // Parses shapes in file order, handing them over in batches as they are read
+        static void read(Path file, int batchSize, Consumer<List<Shape>> batches) throws IOException {
+            ByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                if (size > MAP_THRESHOLD) {
+                    buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } else {
+                    buf = ByteBuffer.allocate((int) size);
+                    while (buf.hasRemaining() && ch.read(buf) >= 0) { }
+                    buf.flip();
+                }
+            }
+            try {
+                if (buf.getInt() != MAGIC) throw new IOException("Not a drawing file: " + file.getFileName());
+                int version = buf.get();
+                if (version != VERSION) throw new IOException("Unsupported drawing version " + version);
+                int styleCount = getVarint(buf);
+                // Each style takes at least 5 bytes and each point 2, so sizes
+                // beyond what is left of the file can only come from corrupt data
+                if (styleCount < 0 || styleCount > buf.remaining() / 5) throw new IOException("Corrupt drawing file: bad style table");
+                Style[] styles = new Style[styleCount];
+                for (int i = 0; i < styleCount; i++) {
+                    Color color = new Color(buf.getInt(), true);
+                    styles[i] = Style.of(color, getVarint(buf));
+                }
+                int shapeCount = getVarint(buf);
+                if (shapeCount < 0) throw new IOException("Corrupt drawing file: bad shape count");
+                List<Shape> batch = new ArrayList<>(batchSize);
+                for (int n = 0; n < shapeCount; n++) {
+                    int type = buf.get();
+                    int style = getVarint(buf);
+                    int count = getVarint(buf);
+                    if (type < 0 || type >= TYPES.length || style < 0 || style >= styleCount || count < 1 || count > buf.remaining() / 2) {
+                        throw new IOException("Corrupt drawing file at shape " + n);
+                    }
+                    int[] pts = new int[count * 2];
+                    int px = 0, py = 0;
+                    for (int i = 0; i < count; i++) {
+                        px += unzigzag(getVarint(buf));
+                        py += unzigzag(getVarint(buf));
+                        pts[i * 2] = px;
+                        pts[i * 2 + 1] = py;
+                    }
+                    batch.add(type == 0
+                            ? Shape.polyline(pts, count, styles[style])
+                            : new Shape(TYPES[type], pts[0], pts[1], pts[count * 2 - 2], pts[count * 2 - 1], styles[style]));
+                    if (batch.size() == batchSize) {
+                        batches.accept(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) batches.accept(batch);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated drawing file: " + file.getFileName());
+            }
+        }
+
+        private static void ensure(FileChannel ch, ByteBuffer buf, int needed) throws IOException {
+            if (buf.remaining() < needed) flush(ch, buf);
+        }
+
+        private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        private static void putVarint(ByteBuffer buf, int v) {
+            while ((v & ~0x7F) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        private static int getVarint(ByteBuffer buf) throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buf.get();
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private static int zigzag(int v) {
+            return (v << 1) ^ (v >> 31);
+        }
+
+        private static int unzigzag(int v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+
+    // Renders a drawing at a scale factor as TILE x TILE tiles. Each band of tiles
+    // is rasterized in parallel on the common fork-join pool, using the spatial
+    // index to pick the shapes per tile, then its rows are streamed into the PNG,
+    // so memory stays at one band however large the image is.
+    static class TiledExporter {
+        static final int TILE = 256;
+
+        static void export(Path file, List<Shape> shapes, int width, int height, double scale,
+                           IntConsumer percent) throws IOException {
+            ShapeIndex index = new ShapeIndex();
+            for (Shape s : shapes) index.add(s);
+            int outW = (int) Math.ceil(width * scale);
+            int outH = (int) Math.ceil(height * scale);
+            int tilesX = (outW + TILE - 1) / TILE;
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+                ByteBuffer ihdr = ByteBuffer.allocate(13);
+                ihdr.putInt(outW).putInt(outH).put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0);
+                writeChunk(out, "IHDR", ihdr.array(), 13);
+
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+                DeflaterOutputStream idat = new DeflaterOutputStream(new IdatOutputStream(out), deflater, 1 << 16);
+                byte[] row = new byte[1 + outW * 3];
+                for (int y0 = 0; y0 < outH; y0 += TILE) {
+                    int bandY = y0;
+                    int bandH = Math.min(TILE, outH - y0);
+                    BufferedImage[] tiles = new BufferedImage[tilesX];
+                    IntStream.range(0, tilesX).parallel().forEach(tx ->
+                            tiles[tx] = renderTile(index, tx * TILE, bandY, Math.min(TILE, outW - tx * TILE), bandH, scale));
+                    for (int y = 0; y < bandH; y++) {
+                        int pos = 1;
+                        for (BufferedImage tile : tiles) {
+                            int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+                            for (int x = 0, i = y * tile.getWidth(); x < tile.getWidth(); x++, i++) {
+                                int rgb = pixels[i];
+                                row[pos++] = (byte) (rgb >> 16);
+                                row[pos++] = (byte) (rgb >> 8);
+                                row[pos++] = (byte) rgb;
+                            }
+                        }
+                        idat.write(row);
+                    }
+                    percent.accept((int) (100L * (y0 + bandH) / outH));
+                }
+                idat.finish();
+                deflater.end();
+                idat.flush();
+                writeChunk(out, "IEND", new byte[0], 0);
+            }
+        }
+
+        private static BufferedImage renderTile(ShapeIndex index, int x0, int y0, int w, int h, double scale) {
+            BufferedImage tile = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = tile.createGraphics();
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, w, h);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.translate(-x0, -y0);
+            g2d.scale(scale, scale);
+            Rectangle area = new Rectangle((int) Math.floor(x0 / scale), (int) Math.floor(y0 / scale),
+                    (int) Math.ceil(w / scale) + 1, (int) Math.ceil(h / scale) + 1);
+            renderShapes(g2d, index.query(area));
+            g2d.dispose();
+            return tile;
+        }
+
+        static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+            CRC32 crc = new CRC32();
+            byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            crc.update(typeBytes);
+            crc.update(data, 0, length);
+            out.writeInt(length);
+            out.write(typeBytes);
+            out.write(data, 0, length);
+            out.writeInt((int) crc.getValue());
+        }
+
+        // Cuts the compressed stream into IDAT chunks
+        static class IdatOutputStream extends OutputStream {
+            private final DataOutputStream out;
+            private final byte[] buf = new byte[1 << 16];
+            private int count;
+
+            IdatOutputStream(DataOutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (count == buf.length) flush();
+                buf[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (count == buf.length) flush();
+                    int n = Math.min(len, buf.length - count);
+                    System.arraycopy(b, off, buf, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (count > 0) writeChunk(out, "IDAT", buf, count);
+                count = 0;
+            }
+        }
+    }
+
+    // Opt-in paint instrumentation, off unless -Ddrawing.stats=true or F3 turns it
+    // on: a log2 histogram of paint times, shapes the index drew versus culled
+    // when redrawing the cache, cache hits and misses, and EDT allocation.
+    static class PaintStats {
+        static final int BUCKETS = 24;
+        static final Rectangle HUD = new Rectangle(8, 8, 320, 78);
+
+        boolean enabled = Boolean.getBoolean("drawing.stats");
+        // Bucket i counts paints that took under 2^i microseconds
+        final long[] histogram = new long[BUCKETS];
+        long frames, totalNanos, lastNanos, maxNanos;
+        long drawn, culled, cacheHits, cacheMisses;
+        long paintBytes;
+        double bytesPerSecond;
+        private final com.sun.management.ThreadMXBean threads;
+        private long paintStart, allocStart;
+        private long sampledAt, sampledBytes;
+
+        PaintStats() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+                threads = t;
+            } else {
+                threads = null;
+            }
+        }
+
+        void reset() {
+            Arrays.fill(histogram, 0);
+            frames = totalNanos = lastNanos = maxNanos = 0;
+            drawn = culled = cacheHits = cacheMisses = paintBytes = 0;
+            bytesPerSecond = 0;
+            sampledAt = 0;
+        }
+
+        void begin() {
+            paintStart = System.nanoTime();
+            allocStart = allocatedBytes();
+        }
+
+        void end() {
+            long nanos = System.nanoTime() - paintStart;
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000));
+            histogram[bucket]++;
+            frames++;
+            totalNanos += nanos;
+            lastNanos = nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (threads != null) paintBytes += allocatedBytes() - allocStart;
+        }
+
+        void rendered(int count, int total) {
+            drawn += count;
+            culled += total - count;
+        }
+
+        // Allocation rate of the calling thread since the previous sample
+        void sampleAllocation() {
+            if (threads == null) return;
+            long now = System.nanoTime(), bytes = allocatedBytes();
+            if (sampledAt != 0) bytesPerSecond = (bytes - sampledBytes) * 1e9 / (now - sampledAt);
+            sampledAt = now;
+            sampledBytes = bytes;
+        }
+
+        // Upper bound in milliseconds of the bucket holding the given fraction of paints
+        double percentile(double fraction) {
+            long target = (long) Math.ceil(frames * fraction), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0) return (1L << i) / 1000.0;
+            }
+            return 0;
+        }
+
+        List<String> lines() {
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format("paint %.2f ms  avg %.2f  p95 <%.2f  max %.2f", lastNanos / 1e6,
+                    frames == 0 ? 0 : totalNanos / 1e6 / frames, percentile(0.95), maxNanos / 1e6));
+            lines.add("frames " + frames + "  drawn " + drawn + "  culled " + culled);
+            lines.add("cache hits " + cacheHits + "  misses " + cacheMisses);
+            lines.add(threads == null ? "alloc n/a" : String.format("alloc %.1f MB/s  %.1f KB/paint",
+                    bytesPerSecond / (1 << 20), frames == 0 ? 0 : paintBytes / 1024.0 / frames));
+            return lines;
+        }
+
+        void paintHud(Graphics2D g2d) {
+            g2d.setColor(new Color(0, 0, 0, 170));
+            g2d.fillRect(HUD.x, HUD.y, HUD.width, HUD.height);
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+            int y = HUD.y + 16;
+            for (String line : lines()) {
+                g2d.drawString(line, HUD.x + 6, y);
+                y += 17;
+            }
+        }
+
+        void export(Path file) throws IOException {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                out.println("frames," + frames);
+                out.printf("mean_ms,%.3f%n", frames == 0 ? 0 : totalNanos / 1e6 / frames);
+                out.printf("p50_ms,%.3f%np95_ms,%.3f%np99_ms,%.3f%n", percentile(0.5), percentile(0.95), percentile(0.99));
+                out.printf("max_ms,%.3f%n", maxNanos / 1e6);
+                out.println("shapes_drawn," + drawn);
+                out.println("shapes_culled," + culled);
+                out.println("cache_hits," + cacheHits);
+                out.println("cache_misses," + cacheMisses);
+                out.println("paint_alloc_bytes," + (threads == null ? "" : paintBytes));
+                out.println();
+                out.println("from_ms,to_ms,frames");
+                for (int i = 0; i < BUCKETS; i++) {
+                    if (histogram[i] == 0) continue;
+                    out.printf("%.3f,%.3f,%d%n", i == 0 ? 0 : (1L << (i - 1)) / 1000.0, (1L << i) / 1000.0, histogram[i]);
+                }
+            }
+        }
+
+        private long allocatedBytes() {
+            return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
         }
     }
 
@@ -40,50 +886,104 @@ public class DrawingApplication extends JFrame {
         JButton lineButton = new JButton("Line");
         JButton rectangleButton = new JButton("Rectangle");
         JButton ellipseButton = new JButton("Ellipse");
+        JButton eraserButton = new JButton("Eraser");
         JSlider strokeSlider = new JSlider(1, 10, 2);
         JButton undoButton = new JButton("Undo");
         JButton redoButton = new JButton("Redo");
         JButton colorButton = new JButton("Color");
+        JButton openButton = new JButton("Open");
+        JButton saveButton = new JButton("Save");
+        JButton exportButton = new JButton("Export PNG");
 
         toolBar.add(pencilButton);
         toolBar.add(lineButton);
         toolBar.add(rectangleButton);
         toolBar.add(ellipseButton);
+        toolBar.add(eraserButton);
         toolBar.add(new JLabel("Stroke:"));
         toolBar.add(strokeSlider);
         toolBar.add(undoButton);
         toolBar.add(redoButton);
         toolBar.add(colorButton);
+        toolBar.add(openButton);
+        toolBar.add(saveButton);
+        toolBar.add(exportButton);
 
         // Create canvas
         canvas = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
+                // The HUD timer's own refresh is not a frame; if Swing merged it with
+                // other damage the clip grows past the overlay and the paint counts
+                Rectangle clip = g.getClipBounds();
+                boolean hudRefresh = hudRepaintPending && clip != null && PaintStats.HUD.contains(clip);
+                hudRepaintPending = false;
+                boolean record = stats.enabled && !hudRefresh;
+                if (record) stats.begin();
                 super.paintComponent(g);
+                if (cache == null || cache.getWidth() != getWidth() || cache.getHeight() != getHeight()) {
+                    rebuildCache();
+                    if (record) stats.cacheMisses++;
+                } else if (record) {
+                    stats.cacheHits++;
+                }
+                g.drawImage(cache, 0, 0, null);
                 Graphics2D g2d = (Graphics2D) g;
-                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                for (Shape shape : shapes) {
-                    g2d.setColor(shape.color);
-                    g2d.setStroke(new BasicStroke(shape.stroke));
-                    drawShape(g2d, shape);
+                if (currentShape != null) {
+                    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    renderShape(g2d, currentShape);
                 }
+                if (record) stats.end();
+                // Drawn after timing so the overlay does not measure itself
+                if (stats.enabled) stats.paintHud(g2d);
             }
         };
         canvas.setBackground(Color.WHITE);
+        damageTimer = new Timer(16, e -> {
+            applySamples();
+            if (damage != null) canvas.repaint(damage);
+            damage = null;
+        });
+        damageTimer.setRepeats(false);
+        hudTimer = new Timer(500, e -> {
+            stats.sampleAllocation();
+            hudRepaintPending = true;
+            canvas.repaint(PaintStats.HUD);
+        });
+        if (stats.enabled) hudTimer.start();
 
         // Mouse listeners
         canvas.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
                 startPoint = e.getPoint();
+                gestureStart = e.getWhen();
+                if (currentTool.equals("eraser")) {
+                    erase(startPoint);
+                } else if (currentTool.equals("pencil")) {
+                    currentShape = Shape.stroke(startPoint.x, startPoint.y, Style.of(currentColor, strokeWidth));
+                    sampleCount = 0;
+                    damage(currentShape.bounds());
+                }
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
-                if (startPoint != null) {
-                    shapes.add(new Shape(currentTool, startPoint, e.getPoint(), currentColor, strokeWidth));
-                    canvas.repaint();
-                    undoneShapes.clear();
+                if (currentTool.equals("eraser")) {
+                    startPoint = null;
+                } else if (startPoint != null) {
+                    Shape shape = currentShape;
+                    currentShape = null;
+                    if (shape != null && shape.type.equals("pencil")) {
+                        applySamples(shape);
+                        shape.addPoint(e.getX(), e.getY());
+                        damage(shape.bounds());
+                        shape.finish();
+                    } else {
+                        if (shape != null) damage(shape.bounds());
+                        shape = new Shape(currentTool, startPoint.x, startPoint.y, e.getX(), e.getY(), Style.of(currentColor, strokeWidth));
+                    }
+                    commitShape(shape);
                     startPoint = null;
                 }
             }
@@ -92,9 +992,23 @@ public class DrawingApplication extends JFrame {
         canvas.addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
-                if (currentTool.equals("pencil")) {
-                    shapes.add(new Shape("pencil", e.getPoint(), e.getPoint(), currentColor, strokeWidth));
-                    canvas.repaint();
+                if (currentTool.equals("eraser")) {
+                    erase(e.getPoint());
+                } else if (currentShape != null && currentShape.type.equals("pencil")) {
+                    // Damage covers the raw segment, which contains whatever the frame keeps
+                    int lastX = sampleCount > 0 ? samples[sampleCount * 2 - 2] : currentShape.x2;
+                    int lastY = sampleCount > 0 ? samples[sampleCount * 2 - 1] : currentShape.y2;
+                    if (sampleCount * 2 == samples.length) samples = Arrays.copyOf(samples, samples.length * 2);
+                    samples[sampleCount * 2] = e.getX();
+                    samples[sampleCount * 2 + 1] = e.getY();
+                    sampleCount++;
+                    Rectangle moved = new Rectangle(lastX, lastY, 0, 0);
+                    moved.add(e.getX(), e.getY());
+                    damage(Shape.inflate(moved, strokeWidth));
+                } else if (startPoint != null) {
+                    if (currentShape != null) damage(currentShape.bounds());
+                    currentShape = new Shape(currentTool, startPoint.x, startPoint.y, e.getX(), e.getY(), Style.of(currentColor, strokeWidth));
+                    damage(currentShape.bounds());
                 }
             }
         });
@@ -104,23 +1018,17 @@ public class DrawingApplication extends JFrame {
         lineButton.addActionListener(e -> currentTool = "line");
         rectangleButton.addActionListener(e -> currentTool = "rectangle");
         ellipseButton.addActionListener(e -> currentTool = "ellipse");
+        eraserButton.addActionListener(e -> currentTool = "eraser");
+        openButton.addActionListener(e -> openDrawing());
+        saveButton.addActionListener(e -> saveDrawing());
+        exportButton.addActionListener(e -> exportPng());
         colorButton.addActionListener(e -> {
             Color newColor = JColorChooser.showDialog(this, "Choose Color", currentColor);
             if (newColor != null) currentColor = newColor;
         });
         strokeSlider.addChangeListener(e -> strokeWidth = strokeSlider.getValue());
-        undoButton.addActionListener(e -> {
-            if (!shapes.isEmpty()) {
-                undoneShapes.add(shapes.remove(shapes.size() - 1));
-                canvas.repaint();
-            }
-        });
-        redoButton.addActionListener(e -> {
-            if (!undoneShapes.isEmpty()) {
-                shapes.add(undoneShapes.remove(undoneShapes.size() - 1));
-                canvas.repaint();
-            }
-        });
+        undoButton.addActionListener(e -> undo());
+        redoButton.addActionListener(e -> redo());
 
         // Keyboard shortcuts
         canvas.setFocusable(true);
@@ -132,18 +1040,21 @@ public class DrawingApplication extends JFrame {
                     case KeyEvent.VK_L -> currentTool = "line";
                     case KeyEvent.VK_R -> currentTool = "rectangle";
                     case KeyEvent.VK_E -> currentTool = "ellipse";
+                    case KeyEvent.VK_X -> currentTool = "eraser";
                     case KeyEvent.VK_Z -> {
-                        if (e.isControlDown() && !shapes.isEmpty()) {
-                            undoneShapes.add(shapes.remove(shapes.size() - 1));
-                            canvas.repaint();
-                        }
+                        if (e.isControlDown()) undo();
                     }
                     case KeyEvent.VK_Y -> {
-                        if (e.isControlDown() && !undoneShapes.isEmpty()) {
-                            shapes.add(undoneShapes.remove(undoneShapes.size() - 1));
-                            canvas.repaint();
-                        }
+                        if (e.isControlDown()) redo();
                     }
+                    case KeyEvent.VK_S -> {
+                        if (e.isControlDown()) saveDrawing();
+                    }
+                    case KeyEvent.VK_O -> {
+                        if (e.isControlDown()) openDrawing();
+                    }
+                    case KeyEvent.VK_F3 -> toggleStats();
+                    case KeyEvent.VK_F4 -> exportStats();
                 }
             }
         });
@@ -152,18 +1063,325 @@ public class DrawingApplication extends JFrame {
         add(canvas, BorderLayout.CENTER);
     }
 
-    private void drawShape(Graphics2D g2d, Shape shape) {
-        int x = Math.min(shape.start.x, shape.end.x);
-        int y = Math.min(shape.start.y, shape.end.y);
-        int width = Math.abs(shape.start.x - shape.end.x);
-        int height = Math.abs(shape.start.y - shape.end.y);
+    // Committed shapes are never mutated, so saving can run on a copy of the list
+    private void saveDrawing() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        List<Shape> snapshot = new ArrayList<>(shapes);
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                DrawingFile.write(file.toPath(), snapshot);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(DrawingApplication.this, "Error saving drawing: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void exportPng() {
+        String input = JOptionPane.showInputDialog(this, "Scale factor:", "8");
+        if (input == null) return;
+        double scale;
+        try {
+            scale = Double.parseDouble(input.trim());
+        } catch (NumberFormatException ex) {
+            scale = 0;
+        }
+        if (scale <= 0 || scale > 64) {
+            JOptionPane.showMessageDialog(this, "Scale must be a number between 0 and 64.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("drawing.png"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        List<Shape> snapshot = new ArrayList<>(shapes);
+        int width = canvas.getWidth(), height = canvas.getHeight();
+        double factor = scale;
+        ProgressMonitor monitor = new ProgressMonitor(this, "Exporting " + file.getName(), null, 0, 100);
+        new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                TiledExporter.export(file.toPath(), snapshot, width, height, factor, this::publish);
+                return null;
+            }
+
+            @Override
+            protected void process(List<Integer> percents) {
+                monitor.setProgress(percents.get(percents.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    get();
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(DrawingApplication.this, "Error exporting drawing: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    // Shapes are added to the canvas batch by batch while the file is parsed. The
+    // current drawing is swapped out when the first batch arrives but kept aside
+    // with its history, and put back if the file turns out to be corrupt or foreign.
+    private void openDrawing() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        new SwingWorker<Void, List<Shape>>() {
+            private boolean replaced;
+            private ArrayList<Shape> previousShapes;
+            private ShapeIndex previousIndex;
+            private History previousHistory;
+            private long previousSeq;
+
+            @Override
+            protected Void doInBackground() throws IOException {
+                DrawingFile.read(file.toPath(), 2000, this::publish);
+                return null;
+            }
+
+            private void replaceDrawing() {
+                if (replaced) return;
+                replaced = true;
+                previousShapes = shapes;
+                previousIndex = index;
+                previousHistory = history;
+                previousSeq = nextSeq;
+                shapes = new ArrayList<>();
+                index = new ShapeIndex();
+                history = new History(previousHistory.budget);
+                cache = null;
+                nextSeq = 0;
+                canvas.repaint();
+            }
+
+            private void restoreDrawing() {
+                if (!replaced) return;
+                shapes = previousShapes;
+                index = previousIndex;
+                history = previousHistory;
+                nextSeq = previousSeq;
+                cache = null;
+                canvas.repaint();
+            }
+
+            @Override
+            protected void process(List<List<Shape>> batches) {
+                replaceDrawing();
+                for (List<Shape> batch : batches) {
+                    for (Shape shape : batch) {
+                        shape.seq = nextSeq++;
+                        insertShape(shape);
+                    }
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    replaceDrawing();
+                } catch (Exception ex) {
+                    restoreDrawing();
+                    JOptionPane.showMessageDialog(DrawingApplication.this, "Error opening drawing: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void toggleStats() {
+        stats.enabled = !stats.enabled;
+        if (stats.enabled) {
+            stats.reset();
+            hudTimer.start();
+        } else {
+            hudTimer.stop();
+        }
+        canvas.repaint(PaintStats.HUD);
+    }
+
+    private void exportStats() {
+        if (!stats.enabled) {
+            JOptionPane.showMessageDialog(this, "Paint statistics are off. Press F3 to start recording.");
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("paint-stats.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            stats.export(chooser.getSelectedFile().toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Error exporting statistics: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void undo() {
+        History.Edit edit = history.undo();
+        if (edit == null) return;
+        for (int i = edit.added.size() - 1; i >= 0; i--) removeShape(edit.added.get(i));
+        for (Shape shape : edit.removed) insertShape(shape);
+    }
+
+    private void redo() {
+        History.Edit edit = history.redo();
+        if (edit == null) return;
+        for (Shape shape : edit.removed) removeShape(shape);
+        for (Shape shape : edit.added) insertShape(shape);
+    }
+
+    private void commitShape(Shape shape) {
+        shape.seq = nextSeq++;
+        insertShape(shape);
+        history.added(shape, gestureStart, System.currentTimeMillis());
+    }
+
+    private void erase(Point p) {
+        Shape hit = index.hit(p, 3);
+        if (hit == null) return;
+        removeShape(hit);
+        history.removed(hit, gestureStart, System.currentTimeMillis());
+    }
+
+    // shapes stays sorted by seq, so undone or erased shapes go back to their old depth
+    private void insertShape(Shape shape) {
+        int pos = position(shape.seq);
+        shapes.add(pos, shape);
+        index.add(shape);
+        if (pos < shapes.size() - 1) {
+            redrawCache(shape.bounds());
+            return;
+        }
+        // A shape on top is drawn straight into the cache instead of invalidating it
+        if (cache != null) {
+            Graphics2D g2d = cache.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            renderShape(g2d, shape);
+            g2d.dispose();
+        }
+        damage(shape.bounds());
+    }
+
+    private void removeShape(Shape shape) {
+        int pos = position(shape.seq);
+        if (pos < shapes.size() && shapes.get(pos) == shape) shapes.remove(pos);
+        index.remove(shape);
+        redrawCache(shape.bounds());
+    }
+
+    private int position(long seq) {
+        int lo = 0, hi = shapes.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (shapes.get(mid).seq < seq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void applySamples() {
+        if (currentShape != null && currentShape.type.equals("pencil")) applySamples(currentShape);
+        sampleCount = 0;
+    }
+
+    // Feeds the drag samples buffered since the last frame into the stroke
+    private void applySamples(Shape stroke) {
+        for (int i = 0; i < sampleCount; i++) stroke.addSample(samples[i * 2], samples[i * 2 + 1]);
+        sampleCount = 0;
+    }
+
+    private void damage(Rectangle r) {
+        if (damage == null) {
+            damage = new Rectangle(r);
+            damageTimer.restart();
+        } else {
+            damage.add(r);
+        }
+    }
+
+    // Clears a region of the cache and redraws just the shapes that reach into it
+    private void redrawCache(Rectangle region) {
+        if (cache != null) {
+            Graphics2D g2d = cache.createGraphics();
+            g2d.setClip(region);
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fill(region);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            List<Shape> visible = index.query(region);
+            if (stats.enabled) stats.rendered(visible.size(), shapes.size());
+            renderShapes(g2d, visible);
+            g2d.dispose();
+        }
+        damage(region);
+    }
+
+    private void rebuildCache() {
+        cache = new BufferedImage(Math.max(1, canvas.getWidth()), Math.max(1, canvas.getHeight()), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = cache.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        List<Shape> visible = index.query(new Rectangle(0, 0, cache.getWidth(), cache.getHeight()));
+        if (stats.enabled) stats.rendered(visible.size(), shapes.size());
+        renderShapes(g2d, visible);
+        g2d.dispose();
+    }
+
+    private static void renderShape(Graphics2D g2d, Shape shape) {
+        g2d.setColor(shape.style.color);
+        g2d.setStroke(shape.stroke());
+        drawShape(g2d, shape);
+    }
+
+    // Draws shapes in paint order, only touching the Graphics2D color and stroke
+    // where the style changes. Runs of one style stay batched without reordering,
+    // since sorting by style would change which shape ends up on top.
+    private static void renderShapes(Graphics2D g2d, List<Shape> shapes) {
+        Color color = null;
+        BasicStroke stroke = null;
+        for (Shape shape : shapes) {
+            if (shape.style.color != color) {
+                color = shape.style.color;
+                g2d.setColor(color);
+            }
+            if (shape.stroke() != stroke) {
+                stroke = shape.stroke();
+                g2d.setStroke(stroke);
+            }
+            drawShape(g2d, shape);
+        }
+    }
+
+    private static void drawShape(Graphics2D g2d, Shape shape) {
+        int x = Math.min(shape.x1, shape.x2);
+        int y = Math.min(shape.y1, shape.y2);
+        int width = Math.abs(shape.x1 - shape.x2);
+        int height = Math.abs(shape.y1 - shape.y2);
 
         switch (shape.type) {
             case "pencil":
-                g2d.fillOval(shape.start.x - shape.stroke / 2, shape.start.y - shape.stroke / 2, shape.stroke, shape.stroke);
+                if (shape.pointCount <= 1) {
+                    int w = shape.style.width;
+                    g2d.fillOval(shape.x1 - w / 2, shape.y1 - w / 2, w, w);
+                } else {
+                    g2d.draw(shape.toPath());
+                }
                 break;
             case "line":
-                g2d.drawLine(shape.start.x, shape.start.y, shape.end.x, shape.end.y);
+                g2d.drawLine(shape.x1, shape.y1, shape.x2, shape.y2);
                 break;
             case "rectangle":
                 g2d.drawRect(x, y, width, height);
@@ -173,4 +1391,4 @@ public class DrawingApplication extends JFrame {
                 break;
         }
     }
-}
\ No newline at end of file
+}
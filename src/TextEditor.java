@@ -5,12 +5,830 @@ import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Bidi;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import javax.swing.undo.UndoableEdit;
 
 public class TextEditor extends JFrame {
     private JTextPane textPane;
     private JLabel statusLabel;
+    private JProgressBar progressBar;
+    private JScrollPane scrollPane;
+    private JMenuItem saveItem;
+    // Set while a file is shown in the large-file view instead of the text pane
+    private LargeFileView largeView;
+    private SwingWorker<Void, Integer> indexer;
+    private DocumentListener documentListener;
     private int caretPosition = 0;
-    private int wordCount = 0;
+    private WordCounter wordCounter;
+
+    // Word, line and character totals kept up to date from document events. An
+    // edit can only change the words it touches, so update scans from the edit out
+    // to the nearest whitespace on each side and adjusts the running total; a long
+    // line costs no more than a short one. Removed text is gone by the time the
+    // event arrives, so a document filter counts the words in it beforehand.
+    static class WordCounter {
+        private static final int CHUNK = 1 << 12;
+
+        final Document doc;
+        private final Segment segment = new Segment();
+        private long words;
+        // Words in the span a pending removal will join, counted by the filter
+        private int pendingOffset = -1, pendingLength;
+        private long pendingWords;
+
+        WordCounter(Document doc) {
+            this.doc = doc;
+            words = count(0, doc.getLength());
+            if (doc instanceof AbstractDocument) {
+                ((AbstractDocument) doc).setDocumentFilter(new DocumentFilter() {
+                    @Override
+                    public void remove(FilterBypass fb, int offset, int length) throws BadLocationException {
+                        beforeRemove(offset, length);
+                        fb.remove(offset, length);
+                    }
+
+                    @Override
+                    public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs)
+                            throws BadLocationException {
+                        beforeRemove(offset, length);
+                        fb.replace(offset, length, text, attrs);
+                    }
+                });
+            }
+        }
+
+        void update(DocumentEvent e) {
+            int offset = e.getOffset();
+            if (e.getType() == DocumentEvent.EventType.INSERT) {
+                int end = offset + e.getLength();
+                int from = runStart(offset), to = runEnd(end);
+                // The text on either side was one word, or none, before the insert
+                words += count(from, to) - (from < offset || to > end ? 1 : 0);
+            } else if (offset == pendingOffset && e.getLength() == pendingLength) {
+                words += (runStart(offset) < runEnd(offset) ? 1 : 0) - pendingWords;
+            } else {
+                // A removal the filter did not see
+                words = count(0, doc.getLength());
+            }
+            pendingOffset = -1;
+        }
+
+        long words() {
+            return words;
+        }
+
+        int lines() {
+            return doc.getDefaultRootElement().getElementCount();
+        }
+
+        int chars() {
+            return doc.getLength();
+        }
+
+        private void beforeRemove(int offset, int length) {
+            if (length <= 0) return;
+            pendingOffset = offset;
+            pendingLength = length;
+            pendingWords = count(runStart(offset), runEnd(offset + length));
+        }
+
+        // Start of the run of non-whitespace that ends at offset
+        private int runStart(int offset) {
+            while (offset > 0) {
+                int from = Math.max(0, offset - CHUNK);
+                text(from, offset - from);
+                int i = segment.count;
+                while (i > 0 && !Character.isWhitespace(segment.array[segment.offset + i - 1])) i--;
+                if (i > 0) return from + i;
+                offset = from;
+            }
+            return 0;
+        }
+
+        // End of the run of non-whitespace that starts at offset
+        private int runEnd(int offset) {
+            int length = doc.getLength();
+            while (offset < length) {
+                text(offset, Math.min(CHUNK, length - offset));
+                int i = 0;
+                while (i < segment.count && !Character.isWhitespace(segment.array[segment.offset + i])) i++;
+                offset += i;
+                if (i < segment.count) break;
+            }
+            return offset;
+        }
+
+        private long count(int start, int end) {
+            long n = 0;
+            boolean inWord = false;
+            for (int at = start; at < end; at += segment.count) {
+                text(at, Math.min(CHUNK, end - at));
+                for (int i = segment.offset; i < segment.offset + segment.count; i++) {
+                    boolean space = Character.isWhitespace(segment.array[i]);
+                    if (!space && !inWord) n++;
+                    inWord = !space;
+                }
+            }
+            return n;
+        }
+
+        private void text(int offset, int length) {
+            try {
+                doc.getText(offset, length, segment);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // AbstractDocument.Content as a piece table. The text is a treap of pieces,
+    // each a run of either the original file or an append-only buffer holding
+    // everything inserted since, so insert, remove and offset lookup are O(log n)
+    // in the number of pieces. The original is never copied: a pure ASCII file
+    // with \n line ends stays memory-mapped, anything else is decoded once into a
+    // char[]. Positions live in a second treap ordered by offset with lazy shifts,
+    // so an edit moves all later marks in O(log m) rather than one by one.
+    static class PieceTable implements AbstractDocument.Content {
+        private static final int MAP_CHUNK = 1 << 30;
+        private static final Random RANDOM = new Random();
+
+        private ByteBuffer[] mapped;
+        private char[] decoded;
+        private int originalLength;
+        private char[] added = new char[1024];
+        private int addedLength;
+        private Piece root;
+        private MarkNode marks;
+        private final ReferenceQueue<Mark> collected = new ReferenceQueue<>();
+
+        static final class Piece {
+            final boolean original;
+            final int start;
+            int length;
+            final int priority;
+            // Length of the whole subtree
+            int total;
+            Piece left, right;
+
+            Piece(boolean original, int start, int length, int priority) {
+                this.original = original;
+                this.start = start;
+                this.length = length;
+                this.priority = priority;
+                this.total = length;
+            }
+        }
+
+        // Treap node for one position. The offset is exact once the shifts pending
+        // on its ancestors are added; it is weakly held so unused positions go away.
+        static final class MarkNode extends WeakReference<Mark> {
+            final int priority = RANDOM.nextInt();
+            int offset;
+            // Pending for both children, already applied to this node
+            int shift;
+            int size = 1;
+            MarkNode left, right, parent;
+
+            MarkNode(Mark mark, int offset, ReferenceQueue<Mark> queue) {
+                super(mark, queue);
+                this.offset = offset;
+            }
+        }
+
+        static final class Mark implements Position {
+            MarkNode node;
+
+            @Override
+            public int getOffset() {
+                int offset = node.offset;
+                for (MarkNode p = node.parent; p != null; p = p.parent) offset += p.shift;
+                return offset;
+            }
+        }
+
+        PieceTable() {
+            added[0] = '\n';
+            addedLength = 1;
+            root = new Piece(false, 0, 1, RANDOM.nextInt());
+        }
+
+        // Maps the file and checks whether it can be used as it is; the original is
+        // only attached here; insertOriginal makes it part of the text
+        static PieceTable open(Path file, IntConsumer percent) throws IOException {
+            PieceTable table = new PieceTable();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size >= Integer.MAX_VALUE) throw new IOException("File too large to edit: " + file.getFileName());
+                ByteBuffer[] maps = new ByteBuffer[(int) ((size + MAP_CHUNK - 1) / MAP_CHUNK)];
+                boolean plain = true;
+                for (int i = 0; i < maps.length; i++) {
+                    long base = (long) i * MAP_CHUNK;
+                    maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(MAP_CHUNK, size - base));
+                    for (int j = 0; j < maps[i].limit() && plain; j++) {
+                        byte b = maps[i].get(j);
+                        if (b < 0 || b == '\r') plain = false;
+                        if ((j & 0xFFFFFF) == 0) percent.accept((int) (50 * (base + j) / size));
+                    }
+                }
+                if (plain) {
+                    table.mapped = maps;
+                    table.originalLength = (int) size;
+                } else {
+                    table.decode(channel, size, percent);
+                }
+            }
+            return table;
+        }
+
+        // UTF-8 with malformed bytes replaced; CRLF and CR become \n as in any Swing
+        // document, with a \r at the end of a read held back in case \n follows
+        private void decode(FileChannel channel, long size, IntConsumer percent) throws IOException {
+            channel.position(0);
+            char[] text = new char[(int) size];
+            int length = 0;
+            boolean pendingCr = false;
+            Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE), 1 << 16);
+            char[] buf = new char[1 << 16];
+            int n;
+            while ((n = reader.read(buf)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    char c = buf[i];
+                    if (pendingCr) {
+                        text[length++] = '\n';
+                        pendingCr = false;
+                        if (c == '\n') continue;
+                    }
+                    if (c == '\r') pendingCr = true;
+                    else text[length++] = c;
+                }
+                percent.accept((int) (50 * channel.position() / Math.max(1, size)));
+            }
+            if (pendingCr) text[length++] = '\n';
+            decoded = length < text.length - text.length / 8 ? Arrays.copyOf(text, length) : text;
+            originalLength = length;
+        }
+
+        int originalLength() {
+            return originalLength;
+        }
+
+        // Whether the original holds right-to-left or complex-script text; a
+        // memory-mapped original is ASCII and never does
+        boolean originalNeedsLayout() {
+            return decoded != null && (Bidi.requiresBidi(decoded, 0, originalLength)
+                    || Font.textRequiresLayout(decoded, 0, originalLength));
+        }
+
+        // Makes original[start, start + len) part of the text at where
+        void insertOriginal(int where, int start, int len) {
+            Piece[] parts = split(root, where);
+            root = merge(merge(parts[0], new Piece(true, start, len, RANDOM.nextInt())), parts[1]);
+            shiftForInsert(where, len);
+        }
+
+        @Override
+        public int length() {
+            return root.total;
+        }
+
+        @Override
+        public UndoableEdit insertString(int where, String str) throws BadLocationException {
+            if (where < 0 || where > length()) throw new BadLocationException("Invalid insert", where);
+            int len = str.length();
+            if (len == 0) return null;
+            int start = addedLength;
+            if (addedLength + len > added.length) added = Arrays.copyOf(added, Math.max(added.length * 2, addedLength + len));
+            str.getChars(0, len, added, addedLength);
+            addedLength += len;
+            Piece[] parts = split(root, where);
+            Piece last = parts[0];
+            while (last != null && last.right != null) last = last.right;
+            if (last != null && !last.original && last.start + last.length == start) {
+                // Typing at the end of the latest insert just grows that piece
+                for (Piece p = parts[0]; p != null; p = p.right) p.total += len;
+                last.length += len;
+                root = merge(parts[0], parts[1]);
+            } else {
+                root = merge(merge(parts[0], new Piece(false, start, len, RANDOM.nextInt())), parts[1]);
+            }
+            shiftForInsert(where, len);
+            return null;
+        }
+
+        @Override
+        public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+            if (where < 0 || nitems < 0 || where + nitems > length()) throw new BadLocationException("Invalid remove", where);
+            if (nitems == 0) return null;
+            Piece[] head = split(root, where);
+            Piece[] tail = split(head[1], nitems);
+            root = merge(head[0], tail[1]);
+            purge();
+            MarkNode[] before = splitMarks(marks, where);
+            MarkNode[] after = splitMarks(before[1], where + nitems);
+            collapse(after[0], where);
+            if (after[1] != null) shift(after[1], -nitems);
+            marks = mergeMarks(mergeMarks(before[0], after[0]), after[1]);
+            return null;
+        }
+
+        @Override
+        public String getString(int where, int len) throws BadLocationException {
+            Segment s = new Segment();
+            getChars(where, len, s);
+            return new String(s.array, s.offset, s.count);
+        }
+
+        // Points the segment straight at the buffer when the range lies in a single
+        // char-backed piece; otherwise copies the range out of the pieces
+        @Override
+        public void getChars(int where, int len, Segment txt) throws BadLocationException {
+            if (where < 0 || len < 0 || where + len > length()) throw new BadLocationException("Invalid range", where + len);
+            if (len == 0) {
+                txt.array = added;
+                txt.offset = 0;
+                txt.count = 0;
+                return;
+            }
+            Piece p = root;
+            int offset = where;
+            while (true) {
+                int left = p.left == null ? 0 : p.left.total;
+                if (offset < left) {
+                    p = p.left;
+                } else if (offset < left + p.length) {
+                    offset -= left;
+                    break;
+                } else {
+                    offset -= left + p.length;
+                    p = p.right;
+                }
+            }
+            boolean partial = txt.isPartialReturn();
+            char[] backing = p.original ? decoded : added;
+            if (backing != null && (partial || offset + len <= p.length)) {
+                txt.array = backing;
+                txt.offset = p.start + offset;
+                txt.count = Math.min(len, p.length - offset);
+                return;
+            }
+            if (partial) len = Math.min(len, p.length - offset);
+            char[] out = new char[len];
+            copy(root, 0, where, len, out);
+            txt.array = out;
+            txt.offset = 0;
+            txt.count = len;
+        }
+
+        @Override
+        public Position createPosition(int offset) throws BadLocationException {
+            if (offset < 0 || offset > length()) throw new BadLocationException("Invalid position", offset);
+            purge();
+            MarkNode[] parts = splitMarks(marks, offset);
+            // Positions at the same offset always move together, so one is shared
+            MarkNode first = parts[1];
+            while (first != null && first.left != null) {
+                push(first);
+                first = first.left;
+            }
+            Mark mark = first != null && first.offset == offset ? first.get() : null;
+            if (mark == null) {
+                mark = new Mark();
+                mark.node = new MarkNode(mark, offset, collected);
+                parts[1] = mergeMarks(mark.node, parts[1]);
+            }
+            marks = mergeMarks(parts[0], parts[1]);
+            return mark;
+        }
+
+        private void copy(Piece node, int nodeStart, int where, int len, char[] out) {
+            if (node == null) return;
+            int pieceStart = nodeStart + (node.left == null ? 0 : node.left.total);
+            int pieceEnd = pieceStart + node.length;
+            if (where < pieceStart) copy(node.left, nodeStart, where, len, out);
+            int from = Math.max(where, pieceStart), to = Math.min(where + len, pieceEnd);
+            if (from < to) read(node, from - pieceStart, out, from - where, to - from);
+            if (where + len > pieceEnd) copy(node.right, pieceEnd, where, len, out);
+        }
+
+        private void read(Piece piece, int offset, char[] out, int outOffset, int n) {
+            if (!piece.original) {
+                System.arraycopy(added, piece.start + offset, out, outOffset, n);
+            } else if (decoded != null) {
+                System.arraycopy(decoded, piece.start + offset, out, outOffset, n);
+            } else {
+                int index = piece.start + offset;
+                for (int i = 0; i < n; i++, index++) {
+                    out[outOffset + i] = (char) mapped[index / MAP_CHUNK].get(index % MAP_CHUNK);
+                }
+            }
+        }
+
+        // Splits off the first k characters, cutting a piece in two if needed. The
+        // cut-off tail takes the piece's priority so the heap order still holds.
+        private static Piece[] split(Piece t, int k) {
+            if (t == null) return new Piece[2];
+            int left = t.left == null ? 0 : t.left.total;
+            if (k <= left) {
+                Piece[] parts = split(t.left, k);
+                t.left = parts[1];
+                update(t);
+                return new Piece[]{parts[0], t};
+            }
+            k -= left;
+            if (k >= t.length) {
+                Piece[] parts = split(t.right, k - t.length);
+                t.right = parts[0];
+                update(t);
+                return new Piece[]{t, parts[1]};
+            }
+            Piece tail = new Piece(t.original, t.start + k, t.length - k, t.priority);
+            tail.right = t.right;
+            update(tail);
+            t.length = k;
+            t.right = null;
+            update(t);
+            return new Piece[]{t, tail};
+        }
+
+        private static Piece merge(Piece a, Piece b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (a.priority > b.priority) {
+                a.right = merge(a.right, b);
+                update(a);
+                return a;
+            }
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+
+        private static void update(Piece p) {
+            p.total = p.length + (p.left == null ? 0 : p.left.total) + (p.right == null ? 0 : p.right.total);
+        }
+
+        // Marks after where move by len; a mark at where moves too unless where is 0
+        private void shiftForInsert(int where, int len) {
+            purge();
+            MarkNode[] parts = splitMarks(marks, where == 0 ? 1 : where);
+            if (parts[1] != null) shift(parts[1], len);
+            marks = mergeMarks(parts[0], parts[1]);
+        }
+
+        // Drops nodes whose positions are no longer referenced
+        private void purge() {
+            Reference<? extends Mark> ref;
+            while ((ref = collected.poll()) != null) {
+                MarkNode n = (MarkNode) ref;
+                push(n);
+                MarkNode m = mergeMarks(n.left, n.right);
+                MarkNode p = n.parent;
+                if (m != null) m.parent = p;
+                if (p == null) {
+                    marks = m;
+                } else {
+                    if (p.left == n) p.left = m;
+                    else p.right = m;
+                    for (; p != null; p = p.parent) p.size--;
+                }
+            }
+        }
+
+        // Marks before offset, and at or after it
+        private static MarkNode[] splitMarks(MarkNode t, int offset) {
+            if (t == null) return new MarkNode[2];
+            push(t);
+            t.parent = null;
+            if (t.offset < offset) {
+                MarkNode[] parts = splitMarks(t.right, offset);
+                t.right = parts[0];
+                if (parts[0] != null) parts[0].parent = t;
+                update(t);
+                return new MarkNode[]{t, parts[1]};
+            }
+            MarkNode[] parts = splitMarks(t.left, offset);
+            t.left = parts[1];
+            if (parts[1] != null) parts[1].parent = t;
+            update(t);
+            return new MarkNode[]{parts[0], t};
+        }
+
+        private static MarkNode mergeMarks(MarkNode a, MarkNode b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (a.priority > b.priority) {
+                push(a);
+                a.right = mergeMarks(a.right, b);
+                a.right.parent = a;
+                update(a);
+                return a;
+            }
+            push(b);
+            b.left = mergeMarks(a, b.left);
+            b.left.parent = b;
+            update(b);
+            return b;
+        }
+
+        // Marks inside removed text all end up where the removal started
+        private static void collapse(MarkNode t, int offset) {
+            if (t == null) return;
+            t.offset = offset;
+            t.shift = 0;
+            collapse(t.left, offset);
+            collapse(t.right, offset);
+        }
+
+        private static void shift(MarkNode t, int delta) {
+            t.offset += delta;
+            t.shift += delta;
+        }
+
+        private static void push(MarkNode t) {
+            if (t.shift == 0) return;
+            if (t.left != null) shift(t.left, t.shift);
+            if (t.right != null) shift(t.right, t.shift);
+            t.shift = 0;
+        }
+
+        private static void update(MarkNode t) {
+            t.size = 1 + (t.left == null ? 0 : t.left.size) + (t.right == null ? 0 : t.right.size);
+        }
+    }
+
+    // Styled document over a PieceTable. The file is added to the table a chunk at
+    // a time and each chunk is announced through insertUpdate under the write
+    // lock, so DefaultStyledDocument builds the paragraph elements as if the text
+    // had been inserted, without the text itself being copied.
+    static class PieceTableDocument extends DefaultStyledDocument {
+        static final int LOAD_CHUNK = 1 << 20;
+
+        private PieceTableDocument(PieceTable content) {
+            super(content, new StyleContext());
+        }
+
+        static PieceTableDocument open(File file, IntConsumer percent) throws IOException {
+            PieceTable table = PieceTable.open(file.toPath(), percent);
+            PieceTableDocument doc = new PieceTableDocument(table);
+            doc.load(table, percent);
+            return doc;
+        }
+
+        // The chunks bypass insertString, so the i18n property it would set for
+        // bidi or complex text is set here; insertUpdate then builds bidi runs too
+        private void load(PieceTable table, IntConsumer percent) {
+            if (table.originalNeedsLayout()) putProperty("i18n", Boolean.TRUE);
+            writeLock();
+            try {
+                int total = table.originalLength();
+                for (int start = 0; start < total; start += LOAD_CHUNK) {
+                    int len = Math.min(LOAD_CHUNK, total - start);
+                    int where = getLength();
+                    table.insertOriginal(where, start, len);
+                    DefaultDocumentEvent e = new DefaultDocumentEvent(where, len, DocumentEvent.EventType.INSERT);
+                    insertUpdate(e, null);
+                    e.end();
+                    percent.accept(50 + (int) (50L * (start + len) / total));
+                }
+            } finally {
+                writeUnlock();
+            }
+        }
+    }
+
+    // Read-only view of a file of any size. The file is memory-mapped and a
+    // background pass records where every STRIDE-th line starts; painting seeks
+    // to the nearest checkpoint and decodes only the lines inside the clip, so
+    // memory is the checkpoint array however long the file is. Heights are ints,
+    // which limits the view to about Integer.MAX_VALUE / line height lines.
+    static class LargeFileView extends JComponent implements Scrollable {
+        static final int STRIDE = 1024;
+        // Longer lines are cut off when painted
+        static final int MAX_LINE_BYTES = 1 << 16;
+        private static final int MAP_CHUNK = 1 << 30;
+
+        private final ByteBuffer[] maps;
+        private final long size;
+        private final int lineHeight, charWidth, ascent;
+        // Guarded by this: checkpoints[i] is the offset of line i * STRIDE, and
+        // lines of MAX_LINE_BYTES or more run from longStarts[i] to longEnds[i]
+        private long[] checkpoints = new long[64];
+        private int checkpointCount = 1;
+        private long[] longStarts = new long[16], longEnds = new long[16];
+        private int longCount;
+        private long lines = 1;
+        private int longestLine;
+        private long highlighted = -1;
+
+        LargeFileView(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                size = channel.size();
+                maps = new ByteBuffer[(int) ((size + MAP_CHUNK - 1) / MAP_CHUNK)];
+                for (int i = 0; i < maps.length; i++) {
+                    long base = (long) i * MAP_CHUNK;
+                    maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(MAP_CHUNK, size - base));
+                }
+            }
+            setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+            setBackground(Color.WHITE);
+            setOpaque(true);
+            FontMetrics fm = getFontMetrics(getFont());
+            lineHeight = fm.getHeight();
+            charWidth = fm.charWidth('m');
+            ascent = fm.getAscent();
+        }
+
+        // Scans the file for line starts; meant for a background thread and
+        // stops early if that thread is interrupted
+        void index(IntConsumer percent) {
+            long newlines = 0, lineLength = 0;
+            int longest = 0;
+            long[] found = new long[64];
+            int foundCount = 0;
+            List<long[]> longFound = new ArrayList<>();
+            for (long pos = 0; pos < size && !Thread.currentThread().isInterrupted(); ) {
+                long end = Math.min(size, pos + (1 << 24));
+                for (; pos < end; pos++) {
+                    if (byteAt(pos) != '\n') {
+                        lineLength++;
+                        continue;
+                    }
+                    longest = (int) Math.min(MAX_LINE_BYTES, Math.max(longest, lineLength));
+                    if (lineLength >= MAX_LINE_BYTES) longFound.add(new long[]{pos - lineLength, pos});
+                    lineLength = 0;
+                    if (++newlines % STRIDE == 0) {
+                        if (foundCount == found.length) found = Arrays.copyOf(found, foundCount * 2);
+                        found[foundCount++] = pos + 1;
+                    }
+                }
+                longest = (int) Math.min(MAX_LINE_BYTES, Math.max(longest, lineLength));
+                boolean last = pos == size;
+                if (last && lineLength >= MAX_LINE_BYTES) longFound.add(new long[]{size - lineLength, size});
+                synchronized (this) {
+                    if (checkpointCount + foundCount > checkpoints.length) {
+                        checkpoints = Arrays.copyOf(checkpoints, Math.max(checkpoints.length * 2, checkpointCount + foundCount));
+                    }
+                    System.arraycopy(found, 0, checkpoints, checkpointCount, foundCount);
+                    checkpointCount += foundCount;
+                    for (long[] line : longFound) {
+                        if (longCount == longStarts.length) {
+                            longStarts = Arrays.copyOf(longStarts, longCount * 2);
+                            longEnds = Arrays.copyOf(longEnds, longCount * 2);
+                        }
+                        longStarts[longCount] = line[0];
+                        longEnds[longCount++] = line[1];
+                    }
+                    // A trailing newline ends the last line rather than starting one
+                    lines = newlines + (last && size > 0 && lineLength == 0 ? 0 : 1);
+                    longestLine = longest;
+                }
+                foundCount = 0;
+                longFound.clear();
+                percent.accept((int) (100 * pos / size));
+            }
+        }
+
+        synchronized long lines() {
+            return lines;
+        }
+
+        // Scrolls so the given 1-based line is at the top; false if it is not indexed yet
+        boolean goToLine(long line) {
+            if (line < 1 || line > lines()) return false;
+            highlighted = line - 1;
+            Rectangle visible = getVisibleRect();
+            scrollRectToVisible(new Rectangle(visible.x, (int) Math.min(Integer.MAX_VALUE - lineHeight, (line - 1) * lineHeight),
+                    1, Math.max(lineHeight, visible.height)));
+            repaint();
+            return true;
+        }
+
+        @Override
+        public synchronized Dimension getPreferredSize() {
+            int width = longestLine * charWidth + 8;
+            int height = (int) Math.min(Integer.MAX_VALUE - lineHeight, lines * lineHeight);
+            return new Dimension(width, height);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            long first = clip.y / lineHeight;
+            long last = Math.min(lines() - 1, ((long) clip.y + clip.height) / lineHeight);
+            long pos = lineStart(first);
+            g.setFont(getFont());
+            for (long line = first; line <= last && pos <= size; line++) {
+                long end = lineEnd(pos);
+                int y = (int) (line * lineHeight);
+                if (line == highlighted) {
+                    g.setColor(new Color(255, 250, 205));
+                    g.fillRect(clip.x, y, clip.width, lineHeight);
+                }
+                g.setColor(getForeground());
+                g.drawString(decode(pos, (int) Math.min(end - pos, MAX_LINE_BYTES)), 4, y + ascent);
+                pos = end + 1;
+            }
+        }
+
+        // Offset of a line: its checkpoint, then a hop over at most STRIDE lines
+        private long lineStart(long line) {
+            long pos;
+            synchronized (this) {
+                int checkpoint = (int) Math.min(line / STRIDE, checkpointCount - 1);
+                pos = checkpoints[checkpoint];
+                line -= (long) checkpoint * STRIDE;
+            }
+            for (; line > 0 && pos < size; line--) pos = Math.min(size, lineEnd(pos) + 1);
+            return pos;
+        }
+
+        // Offset of the newline ending the line that starts at pos, or size. Only
+        // MAX_LINE_BYTES are scanned; the end of a longer line comes from the index,
+        // or from a full scan if the indexer has not reached it yet.
+        private long lineEnd(long pos) {
+            long limit = Math.min(size, pos + MAX_LINE_BYTES);
+            for (long p = pos; p < limit; p++) {
+                if (byteAt(p) == '\n') return p;
+            }
+            if (limit == size) return size;
+            synchronized (this) {
+                int i = Arrays.binarySearch(longStarts, 0, longCount, pos);
+                if (i >= 0) return longEnds[i];
+            }
+            long end = limit;
+            while (end < size && byteAt(end) != '\n') end++;
+            return end;
+        }
+
+        private String decode(long pos, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) bytes[i] = byteAt(pos + i);
+            if (length > 0 && bytes[length - 1] == '\r') length--;
+            String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (text.indexOf('\t') < 0) return text;
+            StringBuilder expanded = new StringBuilder(text.length() + 16);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c != '\t') expanded.append(c);
+                else do expanded.append(' '); while (expanded.length() % 8 != 0);
+            }
+            return expanded.toString();
+        }
+
+        private byte byteAt(long pos) {
+            return maps[(int) (pos / MAP_CHUNK)].get((int) (pos % MAP_CHUNK));
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? lineHeight : charWidth * 4;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? Math.max(lineHeight, visibleRect.height - lineHeight) : visibleRect.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+        }
+    }
 
     public TextEditor() {
         setTitle("Text Editor");
@@ -21,9 +839,14 @@ public class TextEditor extends JFrame {
         // Create components
         textPane = new JTextPane();
         textPane.setFont(new Font("Arial", Font.PLAIN, 14));
-        JScrollPane scrollPane = new JScrollPane(textPane);
-        statusLabel = new JLabel("Position: 0 | Words: 0");
-        statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        scrollPane = new JScrollPane(textPane);
+        statusLabel = new JLabel("Position: 0 | Words: 0 | Lines: 1 | Chars: 0");
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        JPanel statusPanel = new JPanel(new BorderLayout(10, 0));
+        statusPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+        statusPanel.add(progressBar, BorderLayout.EAST);
 
         // Create menu bar
         JMenuBar menuBar = new JMenuBar();
@@ -31,11 +854,17 @@ public class TextEditor extends JFrame {
         JMenu formatMenu = new JMenu("Format");
 
         // File menu items
-        JMenuItem saveItem = new JMenuItem("Save");
+        saveItem = new JMenuItem("Save");
         saveItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK));
         JMenuItem openItem = new JMenuItem("Open");
+        JMenuItem viewItem = new JMenuItem("View Large File...");
+        JMenuItem goToItem = new JMenuItem("Go to Line...");
+        goToItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK));
         fileMenu.add(openItem);
+        fileMenu.add(viewItem);
         fileMenu.add(saveItem);
+        fileMenu.addSeparator();
+        fileMenu.add(goToItem);
 
         // Format menu items
         JMenuItem boldItem = new JMenuItem("Bold");
@@ -88,6 +917,8 @@ public class TextEditor extends JFrame {
 
         saveItem.addActionListener(e -> saveFile());
         openItem.addActionListener(e -> openFile());
+        viewItem.addActionListener(e -> viewLargeFile());
+        goToItem.addActionListener(e -> goToLine());
         copyItem.addActionListener(e -> textPane.copy());
         pasteItem.addActionListener(e -> textPane.paste());
         cutItem.addActionListener(e -> textPane.cut());
@@ -97,33 +928,37 @@ public class TextEditor extends JFrame {
             updateStatus();
         });
 
-        textPane.getDocument().addDocumentListener(new DocumentListener() {
+        documentListener = new DocumentListener() {
             @Override
             public void insertUpdate(DocumentEvent e) {
-                updateWordCount();
+                wordCounter.update(e);
+                updateStatus();
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
-                updateWordCount();
+                wordCounter.update(e);
+                updateStatus();
             }
 
             @Override
             public void changedUpdate(DocumentEvent e) {
-                updateWordCount();
+                // Attribute changes leave the text and paragraphs as they are
             }
-        });
+        };
+        wordCounter = new WordCounter(textPane.getDocument());
+        textPane.getDocument().addDocumentListener(documentListener);
 
         add(toolBar, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
-        add(statusLabel, BorderLayout.SOUTH);
+        add(statusPanel, BorderLayout.SOUTH);
     }
 
     private void applyStyle(String style) {
         StyledDocument doc = textPane.getStyledDocument();
         int start = textPane.getSelectionStart();
         int end = textPane.getSelectionEnd();
-        if (start == end) return;
+        if (start == end || !textPane.isEditable()) return;
 
         SimpleAttributeSet attrs = new SimpleAttributeSet();
         switch (style) {
@@ -140,41 +975,251 @@ public class TextEditor extends JFrame {
         doc.setCharacterAttributes(start, end - start, attrs, false);
     }
 
+    // Writes on a background thread while editing is switched off, so the
+    // document cannot change underneath the save
     private void saveFile() {
         JFileChooser fileChooser = new JFileChooser();
-        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileChooser.getSelectedFile()))) {
-                writer.write(textPane.getText());
-                JOptionPane.showMessageDialog(this, "File saved successfully!");
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error saving file: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = fileChooser.getSelectedFile();
+        Document doc = textPane.getDocument();
+        textPane.setEditable(false);
+        saveItem.setEnabled(false);
+        statusLabel.setText("Saving " + file.getName() + "...");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                writeDocument(doc, file.toPath(), this::publish);
+                return null;
+            }
+
+            @Override
+            protected void process(List<Integer> percents) {
+                progressBar.setValue(percents.get(percents.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                progressBar.setVisible(false);
+                textPane.setEditable(true);
+                saveItem.setEnabled(true);
+                updateStatus();
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(TextEditor.this, "File saved successfully!");
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error saving file: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    // Streams the document as UTF-8 into a temp file next to the target, forces
+    // it to disk and renames it over the target, so a failed save leaves the old
+    // file intact. Text is read in 64K-char segments, each under the read lock,
+    // with partial returns so GapContent and PieceTable hand over their own
+    // arrays instead of copying. Replacing by rename also keeps a mapped
+    // original readable if the target is the file being edited.
+    static void writeDocument(Document doc, Path file, IntConsumer percent) throws IOException {
+        Path tmp = AtomicFiles.tempSibling(file);
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 16);
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            BadLocationException[] failure = new BadLocationException[1];
+            int length = doc.getLength();
+            // A high surrogate at the end of a segment waits for its low half
+            char carry = 0;
+            for (int offset = 0; offset < length; ) {
+                int at = offset;
+                doc.render(() -> {
+                    try {
+                        doc.getText(at, Math.min(1 << 16, doc.getLength() - at), segment);
+                    } catch (BadLocationException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) throw new IOException("Document changed while saving", failure[0]);
+                CharBuffer in = CharBuffer.wrap(segment.array, segment.offset, segment.count);
+                if (carry != 0) {
+                    CharBuffer pair = CharBuffer.wrap(new char[]{carry, in.get()});
+                    encode(encoder, pair, out, channel, false);
+                    // Not a low surrogate after all; it goes back to be encoded with what follows
+                    if (pair.hasRemaining()) in.position(in.position() - 1);
+                    carry = 0;
+                }
+                encode(encoder, in, out, channel, false);
+                if (in.hasRemaining()) carry = in.get();
+                offset += segment.count;
+                percent.accept((int) (100L * offset / length));
+            }
+            encode(encoder, carry != 0 ? CharBuffer.wrap(new char[]{carry}) : CharBuffer.allocate(0), out, channel, true);
+            while (encoder.flush(out).isOverflow()) drain(out, channel);
+            drain(out, channel);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer in, ByteBuffer out, FileChannel channel,
+                               boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(in, out, endOfInput);
+            if (result.isOverflow()) {
+                drain(out, channel);
+            } else {
+                if (result.isError()) result.throwException();
+                return;
             }
         }
     }
 
+    private static void drain(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+
+    // Loads the file on a background thread into a piece-table document that is
+    // not yet shown, then swaps it into the text pane in one step. Building it
+    // off-screen means no listeners, views or repaints run while it grows.
     private void openFile() {
         JFileChooser fileChooser = new JFileChooser();
-        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(fileChooser.getSelectedFile()))) {
-                textPane.setText("");
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    textPane.setText(textPane.getText() + line + "\n");
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = fileChooser.getSelectedFile();
+        textPane.setEditable(false);
+        statusLabel.setText("Opening " + file.getName() + "...");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        new SwingWorker<WordCounter, Integer>() {
+            // The initial count runs here too, while nothing else can see the document
+            @Override
+            protected WordCounter doInBackground() throws IOException {
+                return new WordCounter(PieceTableDocument.open(file, this::publish));
+            }
+
+            @Override
+            protected void process(List<Integer> percents) {
+                progressBar.setValue(percents.get(percents.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                progressBar.setVisible(false);
+                textPane.setEditable(true);
+                try {
+                    WordCounter counter = get();
+                    textPane.getDocument().removeDocumentListener(documentListener);
+                    wordCounter = counter;
+                    textPane.setDocument(counter.doc);
+                    counter.doc.addDocumentListener(documentListener);
+                    textPane.setCaretPosition(0);
+                    closeLargeView();
+                    updateStatus();
+                } catch (Exception ex) {
+                    updateStatus();
+                    JOptionPane.showMessageDialog(TextEditor.this, "Error opening file: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
                 }
-                updateWordCount();
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error opening file: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             }
+        }.execute();
+    }
+
+    // Shows a file read-only in a LargeFileView; lines become reachable as the
+    // background index pass gets to them
+    private void viewLargeFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = fileChooser.getSelectedFile();
+        LargeFileView view;
+        try {
+            view = new LargeFileView(file.toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Error opening file: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        closeLargeView();
+        largeView = view;
+        scrollPane.setViewportView(view);
+        saveItem.setEnabled(false);
+        statusLabel.setText("Viewing " + file.getName() + " | Indexing lines...");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        indexer = new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() {
+                view.index(this::publish);
+                return null;
+            }
+
+            @Override
+            protected void process(List<Integer> percents) {
+                progressBar.setValue(percents.get(percents.size() - 1));
+                view.revalidate();
+                statusLabel.setText("Viewing " + file.getName() + " | Lines: " + view.lines() + " (indexing)");
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) return;
+                progressBar.setVisible(false);
+                view.revalidate();
+                statusLabel.setText("Viewing " + file.getName() + " | Lines: " + view.lines());
+            }
+        };
+        indexer.execute();
     }
 
-    private void updateWordCount() {
-        String text = textPane.getText();
-        wordCount = text.isEmpty() ? 0 : text.trim().split("\\s+").length;
-        updateStatus();
+    private void closeLargeView() {
+        if (largeView == null) return;
+        indexer.cancel(true);
+        progressBar.setVisible(false);
+        largeView = null;
+        scrollPane.setViewportView(textPane);
+        saveItem.setEnabled(true);
+    }
+
+    private void goToLine() {
+        String input = JOptionPane.showInputDialog(this, "Go to line:");
+        if (input == null) return;
+        long line;
+        try {
+            line = Long.parseLong(input.trim());
+        } catch (NumberFormatException ex) {
+            line = 0;
+        }
+        if (largeView != null) {
+            if (!largeView.goToLine(line)) {
+                JOptionPane.showMessageDialog(this, "Line must be between 1 and " + largeView.lines() + ".");
+            }
+            return;
+        }
+        Element root = textPane.getDocument().getDefaultRootElement();
+        if (line < 1 || line > root.getElementCount()) {
+            JOptionPane.showMessageDialog(this, "Line must be between 1 and " + root.getElementCount() + ".");
+            return;
+        }
+        textPane.setCaretPosition(root.getElement((int) line - 1).getStartOffset());
+        textPane.requestFocusInWindow();
     }
 
     private void updateStatus() {
-        statusLabel.setText("Position: " + caretPosition + " | Words: " + wordCount);
+        statusLabel.setText("Position: " + caretPosition + " | Words: " + wordCounter.words()
+                + " | Lines: " + wordCounter.lines() + " | Chars: " + wordCounter.chars());
     }
 }
\ No newline at end of file